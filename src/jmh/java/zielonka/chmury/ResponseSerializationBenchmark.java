@@ -0,0 +1,80 @@
+package zielonka.chmury;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import zielonka.chmury.products.ProductCategory;
+import zielonka.chmury.products.dto.CursorPage;
+import zielonka.chmury.products.dto.ProductResponse;
+import zielonka.chmury.schematics.SchematicResponse;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization of the list endpoints' response bodies with an ObjectMapper configured like Spring Boot's.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseSerializationBenchmark {
+
+    @Param({"20", "50", "500"})
+    private int pageSize;
+
+    private ObjectMapper objectMapper;
+    private CursorPage<ProductResponse> productPage;
+    private Slice<SchematicResponse> schematicPage;
+
+    @Setup
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+        List<ProductResponse> products = new ArrayList<>(pageSize);
+        for (int i = 0; i < pageSize; i++) {
+            ProductResponse product = new ProductResponse();
+            product.setId((long) i);
+            product.setName("Product " + i);
+            product.setDescription("Description of product " + i + " with a few more words in it");
+            product.setPrice(BigDecimal.valueOf(1999 + i, 2));
+            product.setCategory(i % 2 == 0 ? ProductCategory.CHICKEN : ProductCategory.LAVA);
+            product.setStockQuantity(100 + i);
+            product.setCreatedAt(LocalDateTime.of(2025, 1, 1, 12, 0));
+            product.setUpdatedAt(LocalDateTime.of(2025, 1, 2, 12, 0));
+            products.add(product);
+        }
+        productPage = new CursorPage<>(products, "aWQ6YXNjOjUwOg");
+
+        List<SchematicResponse> schematics = new ArrayList<>(pageSize);
+        for (int i = 0; i < pageSize; i++) {
+            List<SchematicResponse.FileDto> files = new ArrayList<>();
+            for (int f = 0; f < 3; f++) {
+                files.add(new SchematicResponse.FileDto(
+                        HexFormat.of().toHexDigits((long) i * 3 + f).repeat(4),
+                        "file-" + f + ".litematic", 10L * f, 4096L * (f + 1)));
+            }
+            schematics.add(new SchematicResponse((long) i, "Schematic " + i, "Description " + i, 1L, 0L, files));
+        }
+        schematicPage = new SliceImpl<>(schematics, PageRequest.of(0, pageSize), true);
+    }
+
+    @Benchmark
+    public byte[] productPage() throws Exception {
+        return objectMapper.writeValueAsBytes(productPage);
+    }
+
+    @Benchmark
+    public byte[] schematicPage() throws Exception {
+        return objectMapper.writeValueAsBytes(schematicPage);
+    }
+}
@@ -0,0 +1,47 @@
+package zielonka.chmury.products;
+
+import org.openjdk.jmh.annotations.*;
+import zielonka.chmury.products.dto.ProductRequest;
+import zielonka.chmury.products.dto.ProductResponse;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProductMapperBenchmark {
+
+    private final ProductMapper mapper = new ProductMapper();
+    private ProductRequest request;
+    private ProductEntity entity;
+
+    @Setup
+    public void setUp() {
+        request = new ProductRequest();
+        request.setName("Chicken bucket");
+        request.setDescription("Twelve pieces of crispy chicken with two large sides");
+        request.setPrice(new BigDecimal("49.99"));
+        request.setCategory(ProductCategory.CHICKEN);
+        request.setStockQuantity(150);
+
+        entity = mapper.toEntity(request);
+        entity.setId(42L);
+        entity.setCreatedAt(LocalDateTime.of(2025, 1, 1, 12, 0));
+        entity.setUpdatedAt(LocalDateTime.of(2025, 1, 2, 12, 0));
+    }
+
+    @Benchmark
+    public ProductEntity toEntity() {
+        return mapper.toEntity(request);
+    }
+
+    @Benchmark
+    public ProductResponse toResponse() {
+        return mapper.toResponse(entity);
+    }
+}
@@ -0,0 +1,52 @@
+package zielonka.chmury.schematics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Upload hashing path: {@link BlobStore#store} hashes the stream while writing it to a temporary file.
+ * The blob is stored once during setup, so measured calls hash, write and discard the copy.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BlobStoreBenchmark {
+
+    @Param({"4096", "1048576", "16777216"})
+    private int size;
+
+    private Path dir;
+    private BlobStore blobStore;
+    private byte[] content;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("blob-bench-");
+        blobStore = new BlobStore(dir.toString(), BlobCodec.NONE, 6, DataSize.ofKilobytes(4), new SimpleMeterRegistry());
+        content = new byte[size];
+        new Random(size).nextBytes(content);
+        blobStore.store(new ByteArrayInputStream(content));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileSystemUtils.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public BlobStore.StoredBlob store() throws IOException {
+        return blobStore.store(new ByteArrayInputStream(content));
+    }
+}
@@ -0,0 +1,47 @@
+package zielonka.chmury.schematics;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilesToDtoBenchmark {
+
+    @Param({"1", "10", "100"})
+    private int files;
+
+    private SchematicService schematicService;
+    private List<PostFileEntity> entities;
+
+    @Setup
+    public void setUp() {
+        DownloadCounter downloadCounter = new DownloadCounter(null);
+        schematicService = new SchematicService(null, null, null, null, null, null, downloadCounter, null, null, null, Runnable::run, 1);
+        entities = new ArrayList<>(files);
+        for (int i = 0; i < files; i++) {
+            PostFileEntity file = new PostFileEntity();
+            file.setId((long) i);
+            file.setHash(HexFormat.of().toHexDigits((long) i).repeat(4));
+            file.setName("schematic-" + i + ".litematic");
+            file.setDownload(i * 10L);
+            file.setFileSize(1024 * (i + 1));
+            entities.add(file);
+            if (i % 2 == 0) {
+                downloadCounter.increment(file.getId());
+            }
+        }
+    }
+
+    @Benchmark
+    public List<SchematicResponse.FileDto> filesToDto() {
+        return schematicService.filesToDto(entities);
+    }
+}
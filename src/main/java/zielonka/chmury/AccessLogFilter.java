@@ -0,0 +1,88 @@
+package zielonka.chmury;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.ServletResponseWrapper;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.catalina.connector.ResponseFacade;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Writes one structured line per request to the {@code access} logger, which logback hands to an
+ * asynchronous appender. Errors and slow requests are always logged, successful ones are sampled.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class AccessLogFilter extends OncePerRequestFilter {
+
+    private static final Logger ACCESS = LoggerFactory.getLogger("access");
+
+    @Value("${access-log.sample-rate}")
+    private double sampleRate;
+    @Value("${access-log.slow-threshold}")
+    private Duration slowThreshold;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain chain) throws ServletException, IOException {
+        if (!ACCESS.isInfoEnabled()) {
+            chain.doFilter(request, response);
+            return;
+        }
+        long start = System.nanoTime();
+        boolean failed = false;
+        try {
+            chain.doFilter(request, response);
+        } catch (ServletException | IOException | RuntimeException ex) {
+            // Unhandled, so the container sets the 500 only after this filter has returned
+            failed = true;
+            throw ex;
+        } finally {
+            long elapsedNanos = System.nanoTime() - start;
+            int status = failed ? HttpServletResponse.SC_INTERNAL_SERVER_ERROR : response.getStatus();
+            boolean slow = elapsedNanos >= slowThreshold.toNanos();
+            if (status >= 400 || slow || ThreadLocalRandom.current().nextDouble() < sampleRate) {
+                Object route = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+                ACCESS.atInfo()
+                        .addKeyValue("method", request.getMethod())
+                        .addKeyValue("route", route != null ? route : request.getRequestURI())
+                        .addKeyValue("status", status)
+                        .addKeyValue("durationMs", elapsedNanos / 1_000_000)
+                        .addKeyValue("bytes", bytesWritten(response))
+                        .addKeyValue("slow", slow)
+                        .log();
+            }
+        }
+    }
+
+    /**
+     * Bytes written by the application, or the declared content length when the body bypassed the
+     * output stream (sendfile).
+     */
+    private static long bytesWritten(HttpServletResponse response) {
+        ServletResponse current = response;
+        while (current instanceof ServletResponseWrapper wrapper) {
+            current = wrapper.getResponse();
+        }
+        long written = current instanceof ResponseFacade facade ? facade.getContentWritten() : 0;
+        if (written > 0) {
+            return written;
+        }
+        String contentLength = response.getHeader(HttpHeaders.CONTENT_LENGTH);
+        return contentLength != null ? Long.parseLong(contentLength) : 0;
+    }
+}
@@ -0,0 +1,47 @@
+package zielonka.chmury;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheManagerProxy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@EnableCaching
+public class CacheConfiguration {
+    public static final String PRODUCTS = "products";
+    public static final String PRODUCTS_BY_CATEGORY = "productsByCategory";
+
+    @Value("${products.cache.by-id.max-size}")
+    private long productsMaxSize;
+    @Value("${products.cache.by-id.ttl}")
+    private Duration productsTtl;
+    @Value("${products.cache.by-category.max-size}")
+    private long categoriesMaxSize;
+    @Value("${products.cache.by-category.ttl}")
+    private Duration categoriesTtl;
+
+    @Bean
+    public CacheManager cacheManager() {
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager();
+        cacheManager.setAllowNullValues(false);
+        cacheManager.registerCustomCache(PRODUCTS, Caffeine.newBuilder()
+                .maximumSize(productsMaxSize)
+                .expireAfterWrite(productsTtl)
+                .recordStats()
+                .build());
+        cacheManager.registerCustomCache(PRODUCTS_BY_CATEGORY, Caffeine.newBuilder()
+                .maximumSize(categoriesMaxSize)
+                .expireAfterWrite(categoriesTtl)
+                .recordStats()
+                .build());
+        // Puts and evictions are deferred until the surrounding transaction commits,
+        // so a concurrent reader cannot re-cache a row that is about to be rolled back.
+        return new TransactionAwareCacheManagerProxy(cacheManager);
+    }
+}
@@ -0,0 +1,49 @@
+package zielonka.chmury;
+
+/**
+ * {@code Accept-Encoding} negotiation for responses that are stored or cached already encoded.
+ */
+public final class ContentCodings {
+
+    private ContentCodings() {
+    }
+
+    /**
+     * Whether the client accepts {@code coding}. An entry naming the coding takes precedence over
+     * {@code *} wherever it appears in the header (RFC 9110, section 12.5.3), and an entry with a
+     * weight of {@code 0} refuses it.
+     */
+    public static boolean accepts(String acceptEncoding, String coding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        double explicit = -1;
+        double wildcard = -1;
+        for (String part : acceptEncoding.split(",")) {
+            String[] tokens = part.split(";");
+            String name = tokens[0].trim();
+            if (name.equalsIgnoreCase(coding)) {
+                explicit = Math.max(explicit, weight(tokens));
+            } else if (name.equals("*")) {
+                wildcard = Math.max(wildcard, weight(tokens));
+            }
+        }
+        return explicit >= 0 ? explicit > 0 : wildcard > 0;
+    }
+
+    /** The {@code q} parameter of an entry, {@code 1} if absent and {@code 0} if malformed. */
+    private static double weight(String[] tokens) {
+        for (int i = 1; i < tokens.length; i++) {
+            String[] param = tokens[i].split("=", 2);
+            if (param.length == 2 && param[0].trim().equalsIgnoreCase("q")) {
+                try {
+                    double q = Double.parseDouble(param[1].trim());
+                    return q >= 0 && q <= 1 ? q : 0;
+                } catch (NumberFormatException ex) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+}
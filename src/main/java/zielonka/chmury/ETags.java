@@ -0,0 +1,43 @@
+package zielonka.chmury;
+
+/**
+ * Weak entity tags derived from the JPA {@code @Version} of an entity.
+ */
+public final class ETags {
+
+    private ETags() {
+    }
+
+    public static String weak(long version) {
+        return "W/\"" + version + "\"";
+    }
+
+    /**
+     * Checks an {@code If-Match} header against the current version. An absent header or {@code *}
+     * matches anything. Weak tags are compared by their opaque value, since they are the only tags
+     * this API hands out.
+     */
+    public static boolean matches(String ifMatch, long version) {
+        if (ifMatch == null || ifMatch.isBlank()) {
+            return true;
+        }
+        String expected = "\"" + version + "\"";
+        for (String candidate : ifMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(expected)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Throws {@link PreconditionFailedException} unless {@link #matches} holds. */
+    public static void checkIfMatch(String ifMatch, long version) {
+        if (!matches(ifMatch, version)) {
+            throw new PreconditionFailedException("Resource was modified, current version is " + weak(version));
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package zielonka.chmury;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+
+/**
+ * Metrics not provided by Actuator out of the box. Everything is scraped from
+ * {@code /actuator/prometheus} together with the built-in HTTP, Hikari, Hibernate and cache meters.
+ */
+@Configuration
+public class MetricsConfiguration {
+
+    @Bean
+    public HibernatePropertiesCustomizer queryCountInspector() {
+        return properties -> properties.put(AvailableSettings.STATEMENT_INSPECTOR, new QueryCountInspector());
+    }
+
+    /**
+     * Records the number of Hibernate statements per request as {@code http.server.requests.queries},
+     * tagged like {@code http.server.requests} so N+1 regressions show up per route.
+     */
+    @Bean
+    public OncePerRequestFilter queryCountFilter(MeterRegistry meterRegistry) {
+        return new OncePerRequestFilter() {
+            @Override
+            protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                            FilterChain chain) throws ServletException, IOException {
+                QueryCountInspector.begin();
+                try {
+                    chain.doFilter(request, response);
+                } finally {
+                    int queries = QueryCountInspector.end();
+                    Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+                    DistributionSummary.builder("http.server.requests.queries")
+                            .description("SQL statements issued by Hibernate per request")
+                            .tag("method", request.getMethod())
+                            .tag("uri", pattern != null ? pattern.toString() : "UNKNOWN")
+                            .register(meterRegistry)
+                            .record(queries);
+                }
+            }
+        };
+    }
+}
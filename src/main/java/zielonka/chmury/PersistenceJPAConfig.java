@@ -1,13 +1,16 @@
 package zielonka.chmury;
 
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.core.env.Environment;
-import org.springframework.jdbc.datasource.DriverManagerDataSource;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 
 import javax.sql.DataSource;
+import java.time.Duration;
 
 @Configuration
 @EnableTransactionManagement
@@ -26,25 +29,54 @@ public class PersistenceJPAConfig {
     private String dbUsername;
     @Value("${db.password}")
     private String dbPassword;
-    Environment environment;
 
-    PersistenceJPAConfig(Environment environment) {
-        this.environment = environment;
-    }
+    @Value("${db.pool.min-idle}")
+    private int poolMinIdle;
+    @Value("${db.pool.max-size}")
+    private int poolMaxSize;
+    @Value("${db.pool.max-lifetime}")
+    private Duration poolMaxLifetime;
+    @Value("${db.pool.idle-timeout}")
+    private Duration poolIdleTimeout;
+    @Value("${db.pool.connection-timeout}")
+    private Duration poolConnectionTimeout;
+    @Value("${db.pool.leak-detection-threshold}")
+    private Duration poolLeakDetectionThreshold;
+    @Value("${db.pool.prepare-threshold}")
+    private int prepareThreshold;
+    @Value("${db.pool.statement-cache-queries}")
+    private int statementCacheQueries;
+    @Value("${db.pool.statement-cache-size-mib}")
+    private int statementCacheSizeMiB;
+
+    @Bean(destroyMethod = "close")
+    public DataSource dataSource(ObjectProvider<MeterRegistry> meterRegistry) {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setPoolName("chmury-pool");
+        dataSource.setDriverClassName(dbDriver);
+        dataSource.setJdbcUrl(dbProtocol + "//" + dbIp + ":" + dbPort + "/" + dbName);
+        dataSource.setUsername(dbUsername);
+        dataSource.setPassword(dbPassword);
+
+        dataSource.setMinimumIdle(poolMinIdle);
+        dataSource.setMaximumPoolSize(poolMaxSize);
+        dataSource.setMaxLifetime(poolMaxLifetime.toMillis());
+        dataSource.setIdleTimeout(poolIdleTimeout.toMillis());
+        dataSource.setConnectionTimeout(poolConnectionTimeout.toMillis());
+        dataSource.setLeakDetectionThreshold(poolLeakDetectionThreshold.toMillis());
+
+        // Server-side prepared statements are cached per physical connection by the driver,
+        // which only pays off now that connections are pooled instead of opened per transaction.
+        dataSource.addDataSourceProperty("prepareThreshold", prepareThreshold);
+        dataSource.addDataSourceProperty("preparedStatementCacheQueries", statementCacheQueries);
+        dataSource.addDataSourceProperty("preparedStatementCacheSizeMiB", statementCacheSizeMiB);
+        // Lets the driver collapse a JDBC insert batch into multi-row INSERT statements
+        dataSource.addDataSourceProperty("reWriteBatchedInserts", true);
+
+        // Pool wait time (hikaricp.connections.acquire) and usage (hikaricp.connections.usage)
+        meterRegistry.ifAvailable(registry ->
+                dataSource.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry)));
 
-    @Bean
-    public DataSource dataSource() {
-        DataSource dataSource = null;
-        DriverManagerDataSource dataSourceDev = null;
-        String dbUrl;
-        String[] activeProfiles = environment.getActiveProfiles();
-        dataSourceDev = new DriverManagerDataSource();
-        dataSourceDev.setDriverClassName(dbDriver);
-        dbUrl = dbProtocol + "//" + dbIp + ":" + dbPort + "/" + dbName;
-        dataSourceDev.setUrl(dbUrl);
-        dataSourceDev.setUsername(dbUsername);
-        dataSourceDev.setPassword(dbPassword);
-        dataSource=dataSourceDev;
         return dataSource;
     }
-}
\ No newline at end of file
+}
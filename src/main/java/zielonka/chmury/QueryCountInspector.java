@@ -0,0 +1,32 @@
+package zielonka.chmury;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Counts SQL statements prepared by Hibernate on the current thread while a count is open.
+ * Statements issued outside a request (scheduled jobs, startup) are not counted.
+ */
+public class QueryCountInspector implements StatementInspector {
+
+    private static final ThreadLocal<int[]> COUNT = new ThreadLocal<>();
+
+    @Override
+    public String inspect(String sql) {
+        int[] count = COUNT.get();
+        if (count != null) {
+            count[0]++;
+        }
+        return sql;
+    }
+
+    static void begin() {
+        COUNT.set(new int[1]);
+    }
+
+    /** Closes the count opened by {@link #begin()} and returns the number of statements seen. */
+    static int end() {
+        int[] count = COUNT.get();
+        COUNT.remove();
+        return count == null ? 0 : count[0];
+    }
+}
@@ -0,0 +1,18 @@
+package zielonka.chmury.products;
+
+import java.math.BigDecimal;
+
+/**
+ * Published by {@link ProductService} whenever a product is created, updated or deleted.
+ * In-memory indexes listen for it after commit to stay in sync with the database.
+ */
+public record ProductChangedEvent(Long id, String name, BigDecimal price, ProductCategory category, boolean deleted) {
+
+    public static ProductChangedEvent saved(ProductEntity entity) {
+        return new ProductChangedEvent(entity.getId(), entity.getName(), entity.getPrice(), entity.getCategory(), false);
+    }
+
+    public static ProductChangedEvent deleted(Long id) {
+        return new ProductChangedEvent(id, null, null, null, true);
+    }
+}
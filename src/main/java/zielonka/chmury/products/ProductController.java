@@ -7,50 +7,93 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
-import lombok.extern.slf4j.Slf4j;
+import org.springdoc.core.annotations.ParameterObject;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import zielonka.chmury.ContentCodings;
+import zielonka.chmury.ETags;
+import zielonka.chmury.products.dto.BulkImportResponse;
+import zielonka.chmury.products.dto.CursorPage;
+import zielonka.chmury.products.dto.ProductPageRequest;
 import zielonka.chmury.products.dto.ProductRequest;
 import zielonka.chmury.products.dto.ProductResponse;
+import zielonka.chmury.products.dto.ReservationRequest;
+import zielonka.chmury.products.dto.StockRequest;
+import zielonka.chmury.products.dto.StockResponse;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 @RestController
 @RequestMapping("/api/v1/products")
 @RequiredArgsConstructor
-@Slf4j
 @Tag(name = "Products", description = "Product catalog operations")
 public class ProductController {
     private final ProductService productService;
+    private final ProductImportService productImportService;
+    private final ProductStockService productStockService;
+    private final ProductResponseCache productResponseCache;
 
     @GetMapping
     @Operation(
-            summary = "Get all products",
-            description = "Returns a list of all products in the catalog"
+            summary = "Get all products (cursor paginated)",
+            description = "Returns one page of products in the catalog. Pass the returned nextCursor as ?cursor= to fetch the following page."
     )
     @ApiResponses({
             @ApiResponse(
                     responseCode = "200",
-                    description = "Successfully retrieved list of products",
+                    description = "Successfully retrieved page of products",
                     content = @Content(
                             mediaType = "application/json",
-                            schema = @Schema(implementation = ProductResponse.class)
+                            schema = @Schema(implementation = CursorPage.class)
                     )
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "Invalid pagination parameters or cursor",
+                    content = @Content
             )
     })
-    public ResponseEntity<List<ProductResponse>> getAllProducts() {
-        log.info("GET /api/v1/products - Retrieving all products");
-        List<ProductResponse> products = productService.getAllProducts();
+    public ResponseEntity<CursorPage<ProductResponse>> getAllProducts(
+            @Valid @ParameterObject ProductPageRequest page) {
+        CursorPage<ProductResponse> products = productService.getAllProducts(page);
         return ResponseEntity.ok(products);
     }
 
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(
+            summary = "Export the whole catalog",
+            description = "Streams all products ordered by ID as newline-delimited JSON, one product per line"
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Catalog export stream",
+                    content = @Content(
+                            mediaType = MediaType.APPLICATION_NDJSON_VALUE,
+                            schema = @Schema(implementation = ProductResponse.class)
+                    )
+            )
+    })
+    public void exportProducts(HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        productService.exportProducts(response.getOutputStream());
+    }
+
     @GetMapping("/{id}")
     @Operation(
             summary = "Get product by ID",
-            description = "Returns a product by given ID"
+            description = "Returns a product by given ID. The response carries a weak ETag derived from the product version; send it as If-None-Match to revalidate."
     )
     @ApiResponses({
             @ApiResponse(
@@ -61,32 +104,42 @@ public class ProductController {
                             schema = @Schema(implementation = ProductResponse.class)
                     )
             ),
+            @ApiResponse(
+                    responseCode = "304",
+                    description = "Product not modified since the given ETag",
+                    content = @Content
+            ),
             @ApiResponse(
                     responseCode = "404",
                     description = "Product with the specified ID not found",
                     content = @Content
             )
     })
-    public ResponseEntity<ProductResponse> getProductById(
+    public ResponseEntity<byte[]> getProductById(
             @Parameter(description = "ID of the product to retrieve", required = true)
-            @PathVariable Long id) {
-        log.info("GET /api/v1/products/{} - Retrieving product", id);
-        ProductResponse product = productService.getProductById(id);
-        return ResponseEntity.ok(product);
+            @PathVariable Long id,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            WebRequest webRequest) {
+        ProductResponseCache.SerializedResponse product =
+                productResponseCache.product(id, () -> productService.loadProductById(id));
+        if (webRequest.checkNotModified(product.etag())) {
+            return null;
+        }
+        return serialized(product, acceptEncoding);
     }
 
     @GetMapping("/category/{category}")
     @Operation(
             summary = "Get products by category",
-            description = "Returns a list of products from given category"
+            description = "Returns one page of products from given category"
     )
     @ApiResponses({
             @ApiResponse(
                     responseCode = "200",
-                    description = "Successfully retrieved list of products in the category",
+                    description = "Successfully retrieved page of products in the category",
                     content = @Content(
                             mediaType = "application/json",
-                            schema = @Schema(implementation = ProductResponse.class)
+                            schema = @Schema(implementation = CursorPage.class)
                     )
             ),
             @ApiResponse(
@@ -95,15 +148,20 @@ public class ProductController {
                     content = @Content
             )
     })
-    public ResponseEntity<List<ProductResponse>> getProductsByCategory(
+    public ResponseEntity<?> getProductsByCategory(
             @Parameter(
                     description = "Product category",
                     required = true,
                     example = "CHICKEN"
             )
-            @PathVariable ProductCategory category) {
-        log.info("GET /api/v1/products/category/{} - Retrieving products by category", category);
-        List<ProductResponse> products = productService.getProductsByCategory(category);
+            @PathVariable ProductCategory category,
+            @Valid @ParameterObject ProductPageRequest page,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        if (page.isFirstDefaultPage()) {
+            return serialized(productResponseCache.category(category,
+                    () -> productService.loadProductsByCategory(category, page)), acceptEncoding);
+        }
+        CursorPage<ProductResponse> products = productService.getProductsByCategory(category, page);
         return ResponseEntity.ok(products);
     }
 
@@ -114,7 +172,7 @@ public class ProductController {
     @ApiResponses({
             @ApiResponse(
                     responseCode = "200",
-                    description = "Success",
+                    description = "Success, best matches first",
                     content = @Content(
                             mediaType = "application/json",
                             schema = @Schema(implementation = ProductResponse.class)
@@ -127,14 +185,19 @@ public class ProductController {
                     required = true,
                     example = "bucket"
             )
-            @RequestParam String name) {
-        log.info("GET /api/v1/products/search?name={} - Searching for product", name);
-        return ResponseEntity.ok(productService.searchProducts(name));
+            @RequestParam String name,
+            @Parameter(
+                    description = "Maximum number of results (at most " + ProductService.MAX_SEARCH_LIMIT + ")",
+                    example = "20"
+            )
+            @RequestParam(defaultValue = "" + ProductService.DEFAULT_SEARCH_LIMIT) int limit) {
+        return ResponseEntity.ok(productService.searchProducts(name, limit));
     }
 
     @GetMapping("/price-range")
     @Operation(
-            summary = "Retrieve products within price range"
+            summary = "Retrieve products within price range",
+            description = "Returns one page of products priced within the range, optionally restricted to a category. Ordered by price unless another sort key is requested."
     )
     @ApiResponses({
             @ApiResponse(
@@ -142,7 +205,7 @@ public class ProductController {
                     description = "Success",
                     content = @Content(
                             mediaType = "application/json",
-                            schema = @Schema(implementation = ProductResponse.class)
+                            schema = @Schema(implementation = CursorPage.class)
                     )
             ),
             @ApiResponse(
@@ -151,21 +214,25 @@ public class ProductController {
                     content = @Content
             )
     })
-    public ResponseEntity<List<ProductResponse>> getProductsByPriceRange(
+    public ResponseEntity<CursorPage<ProductResponse>> getProductsByPriceRange(
             @Parameter(
                     description = "Minimum product price",
-                    required = true,
                     example = "10.00"
             )
-            @RequestParam BigDecimal minPrice,
+            @RequestParam(defaultValue = "0") BigDecimal minPrice,
             @Parameter(
                     description = "Maximum product price",
                     required = true,
                     example = "100.00"
             )
-            @RequestParam BigDecimal maxPrice) {
-        log.info("GET /api/v1/products/price-range?minPrice={}&maxPrice={} - Searching for products", minPrice, maxPrice);
-        return ResponseEntity.ok(productService.getProductsByPriceRange(minPrice, maxPrice));
+            @RequestParam BigDecimal maxPrice,
+            @Parameter(
+                    description = "Restrict results to a single category",
+                    example = "CHICKEN"
+            )
+            @RequestParam(required = false) ProductCategory category,
+            @Valid @ParameterObject ProductPageRequest page) {
+        return ResponseEntity.ok(productService.getProductsByPriceRange(minPrice, maxPrice, category, page));
     }
 
     @PostMapping
@@ -194,13 +261,58 @@ public class ProductController {
                     required = true
             )
             @Valid @RequestBody ProductRequest request) {
-        log.info("POST /api/v1/products - Creating product");
         return ResponseEntity.ok(productService.createProduct(request));
     }
 
+    @PostMapping(value = "/import", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(
+            summary = "Bulk import products from JSON",
+            description = "Creates many products at once from a JSON array of product requests. Invalid rows and names that already exist are reported per row without failing the rest of the import."
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Import processed, see the per-row errors",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = BulkImportResponse.class)
+                    )
+            )
+    })
+    public ResponseEntity<BulkImportResponse> importProducts(
+            @Parameter(description = "Products to create", required = true)
+            @RequestBody List<ProductRequest> requests) {
+        return ResponseEntity.ok(productImportService.importProducts(requests));
+    }
+
+    @PostMapping(value = "/import", consumes = "text/csv")
+    @Operation(
+            summary = "Bulk import products from CSV",
+            description = "Creates many products at once from a CSV stream with a header row naming the columns name, description, price, category and stockQuantity. Rows are read as they arrive; invalid rows are reported per row."
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Import processed, see the per-row errors",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = BulkImportResponse.class)
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "Missing or malformed CSV header",
+                    content = @Content
+            )
+    })
+    public ResponseEntity<BulkImportResponse> importProductsCsv(InputStream body) throws IOException {
+        return ResponseEntity.ok(productImportService.importCsv(body));
+    }
+
     @PutMapping("/{id}")
     @Operation(
-            summary = "Update existing product"
+            summary = "Update existing product",
+            description = "Send the product ETag as If-Match to reject the update when the product was changed in the meantime."
     )
     @ApiResponses({
             @ApiResponse(
@@ -220,20 +332,118 @@ public class ProductController {
                     responseCode = "400",
                     description = "Validation failed",
                     content = @Content
+            ),
+            @ApiResponse(
+                    responseCode = "412",
+                    description = "Product was modified since the version given in If-Match",
+                    content = @Content
             )
     })
     public ResponseEntity<ProductResponse> updateProduct(
             @Parameter(description = "ID of the product to update", required = true)
             @PathVariable Long id,
             @Parameter(description = "Updated product data", required = true)
-            @Valid @RequestBody ProductRequest request) {
-        log.info("PUT /api/v1/products/{} - Updating product", id);
-        return ResponseEntity.ok(productService.updateProduct(id, request));
+            @Valid @RequestBody ProductRequest request,
+            @Parameter(description = "ETag of the version being updated")
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        ProductResponse updated = productService.updateProduct(id, request, ifMatch);
+        return ResponseEntity.ok().eTag(ETags.weak(updated.getVersion())).body(updated);
+    }
+
+    @PostMapping("/{id}/reserve")
+    @Operation(
+            summary = "Reserve product stock",
+            description = "Atomically takes the given quantity from the stock, failing if not enough is available."
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Stock reserved",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = StockResponse.class)
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "404",
+                    description = "Product with the specified ID not found",
+                    content = @Content
+            ),
+            @ApiResponse(
+                    responseCode = "409",
+                    description = "Not enough stock available",
+                    content = @Content
+            )
+    })
+    public ResponseEntity<StockResponse> reserveStock(
+            @Parameter(description = "ID of the product to reserve", required = true)
+            @PathVariable Long id,
+            @Valid @RequestBody StockRequest request) {
+        return ResponseEntity.ok(productStockService.reserve(id, request.getQuantity()));
+    }
+
+    @PostMapping("/{id}/release")
+    @Operation(
+            summary = "Release reserved product stock",
+            description = "Atomically returns the given quantity to the stock."
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Stock released",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = StockResponse.class)
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "404",
+                    description = "Product with the specified ID not found",
+                    content = @Content
+            )
+    })
+    public ResponseEntity<StockResponse> releaseStock(
+            @Parameter(description = "ID of the product to release", required = true)
+            @PathVariable Long id,
+            @Valid @RequestBody StockRequest request) {
+        return ResponseEntity.ok(productStockService.release(id, request.getQuantity()));
+    }
+
+    @PostMapping("/reservations")
+    @Operation(
+            summary = "Reserve a basket",
+            description = "Reserves stock for all items in a single statement. Either every item is reserved or none is."
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "All items reserved",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = StockResponse.class)
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "Validation failed",
+                    content = @Content
+            ),
+            @ApiResponse(
+                    responseCode = "409",
+                    description = "At least one product is missing or short on stock, nothing was reserved",
+                    content = @Content
+            )
+    })
+    public ResponseEntity<List<StockResponse>> reserveBasket(
+            @Parameter(description = "Items to reserve", required = true)
+            @Valid @RequestBody ReservationRequest request) {
+        return ResponseEntity.ok(productStockService.reserveAll(request.getItems()));
     }
 
     @DeleteMapping("/{id}")
     @Operation(
-            summary = "Delete product"
+            summary = "Delete product",
+            description = "Send the product ETag as If-Match to delete only the version that was read."
     )
     @ApiResponses({
             @ApiResponse(
@@ -245,13 +455,35 @@ public class ProductController {
                     responseCode = "404",
                     description = "Product with the specified ID not found",
                     content = @Content
+            ),
+            @ApiResponse(
+                    responseCode = "412",
+                    description = "Product was modified since the version given in If-Match",
+                    content = @Content
             )
     })
     public ResponseEntity<Void> deleteProduct(
             @Parameter(description = "ID of the product to delete", required = true)
-            @PathVariable Long id) {
-        log.info("DELETE /api/v1/products/{} - Deleting product", id);
-        productService.deleteProduct(id);
+            @PathVariable Long id,
+            @Parameter(description = "ETag of the version being deleted")
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        productService.deleteProduct(id, ifMatch);
         return ResponseEntity.noContent().build();
     }
-}
\ No newline at end of file
+
+    /**
+     * Writes a pre-serialized body as is, choosing the gzip variant when the client accepts it.
+     */
+    private static ResponseEntity<byte[]> serialized(ProductResponseCache.SerializedResponse body, String acceptEncoding) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .varyBy(HttpHeaders.ACCEPT_ENCODING);
+        if (body.etag() != null) {
+            response.eTag(body.etag());
+        }
+        if (body.gzip() != null && ContentCodings.accepts(acceptEncoding, "gzip")) {
+            return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(body.gzip());
+        }
+        return response.body(body.json());
+    }
+}
@@ -0,0 +1,168 @@
+package zielonka.chmury.products;
+
+import zielonka.chmury.products.dto.ProductRequest;
+import zielonka.chmury.products.exception.InvalidImportException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Streaming RFC 4180 CSV reader for product imports. The first record is a header naming the
+ * columns {@code name, description, price, category, stockQuantity} in any order. Records are
+ * parsed lazily, so an import never holds the whole file in memory.
+ */
+final class ProductCsvReader implements Iterator<ProductImportRow> {
+
+    private static final String[] COLUMNS = {"name", "description", "price", "category", "stockquantity"};
+
+    private final Reader reader;
+    private final int[] columnIndex = new int[COLUMNS.length];
+    private final StringBuilder field = new StringBuilder();
+    private List<String> nextRecord;
+    private int row;
+    private int pushback = -2;
+
+    ProductCsvReader(Reader reader) {
+        this.reader = reader;
+        List<String> header = readRecord();
+        if (header == null) {
+            throw new InvalidImportException("CSV input is empty");
+        }
+        Map<String, Integer> positions = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            positions.put(header.get(i).trim().toLowerCase(Locale.ROOT), i);
+        }
+        for (int i = 0; i < COLUMNS.length; i++) {
+            Integer position = positions.get(COLUMNS[i]);
+            if (position == null) {
+                throw new InvalidImportException("CSV header is missing column: " + COLUMNS[i]);
+            }
+            columnIndex[i] = position;
+        }
+        nextRecord = readRecord();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return nextRecord != null;
+    }
+
+    @Override
+    public ProductImportRow next() {
+        if (nextRecord == null) {
+            throw new NoSuchElementException();
+        }
+        List<String> record = nextRecord;
+        nextRecord = readRecord();
+        row++;
+        return toRow(record);
+    }
+
+    private ProductImportRow toRow(List<String> record) {
+        ProductRequest request = new ProductRequest();
+        request.setName(column(record, 0));
+        request.setDescription(column(record, 1));
+        try {
+            String price = column(record, 2);
+            request.setPrice(price == null || price.isBlank() ? null : new BigDecimal(price.trim()));
+        } catch (NumberFormatException ex) {
+            return ProductImportRow.invalid(row, request.getName(), "Price is not a number");
+        }
+        try {
+            String category = column(record, 3);
+            request.setCategory(category == null || category.isBlank()
+                    ? null
+                    : ProductCategory.valueOf(category.trim().toUpperCase(Locale.ROOT)));
+        } catch (IllegalArgumentException ex) {
+            return ProductImportRow.invalid(row, request.getName(), "Unknown category");
+        }
+        try {
+            String stock = column(record, 4);
+            request.setStockQuantity(stock == null || stock.isBlank() ? null : Integer.valueOf(stock.trim()));
+        } catch (NumberFormatException ex) {
+            return ProductImportRow.invalid(row, request.getName(), "Stock quantity is not a number");
+        }
+        return ProductImportRow.of(row, request);
+    }
+
+    private String column(List<String> record, int column) {
+        int position = columnIndex[column];
+        return position < record.size() ? record.get(position) : null;
+    }
+
+    /** Reads one record, or returns {@code null} at end of input. Blank lines are skipped. */
+    private List<String> readRecord() {
+        try {
+            List<String> record = new ArrayList<>();
+            field.setLength(0);
+            boolean quoted = false;
+            boolean any = false;
+            int c;
+            while ((c = read()) != -1) {
+                any = true;
+                if (quoted) {
+                    if (c == '"') {
+                        int following = read();
+                        if (following == '"') {
+                            field.append('"');
+                        } else {
+                            quoted = false;
+                            unread(following);
+                        }
+                    } else {
+                        field.append((char) c);
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    record.add(field.toString());
+                    field.setLength(0);
+                } else if (c == '\r' || c == '\n') {
+                    if (c == '\r') {
+                        int following = read();
+                        if (following != '\n') {
+                            unread(following);
+                        }
+                    }
+                    if (record.isEmpty() && field.isEmpty()) {
+                        any = false;
+                        continue;
+                    }
+                    record.add(field.toString());
+                    return record;
+                } else {
+                    field.append((char) c);
+                }
+            }
+            if (!any) {
+                return null;
+            }
+            record.add(field.toString());
+            return record;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private int read() throws IOException {
+        if (pushback != -2) {
+            int c = pushback;
+            pushback = -2;
+            return c;
+        }
+        return reader.read();
+    }
+
+    private void unread(int c) {
+        pushback = c;
+    }
+}
@@ -0,0 +1,146 @@
+package zielonka.chmury.products;
+
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.springframework.data.domain.Sort;
+import zielonka.chmury.products.dto.ProductPageRequest;
+import zielonka.chmury.products.dto.ProductResponse;
+import zielonka.chmury.products.exception.InvalidPageRequestException;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.function.Function;
+
+/**
+ * Keyset cursor over products. A cursor holds the sort key, direction and the sort value and id of
+ * the last row of the previous page, encoded as {@code key:direction:id:value} in URL-safe Base64.
+ * The id is always the tie-breaker so the order is total even for duplicate names or prices.
+ */
+final class ProductCursor {
+
+    enum SortKey {
+        ID("id", ProductResponse::getId, Long::valueOf),
+        NAME("name", ProductResponse::getName, value -> value),
+        PRICE("price", ProductResponse::getPrice, BigDecimal::new);
+
+        private final String property;
+        private final Function<ProductResponse, Object> extractor;
+        private final Function<String, Object> parser;
+
+        SortKey(String property, Function<ProductResponse, Object> extractor, Function<String, Object> parser) {
+            this.property = property;
+            this.extractor = extractor;
+            this.parser = parser;
+        }
+
+        static SortKey of(String name) {
+            for (SortKey key : values()) {
+                if (key.property.equalsIgnoreCase(name)) {
+                    return key;
+                }
+            }
+            throw new InvalidPageRequestException("Unsupported sort key: " + name);
+        }
+    }
+
+    private final SortKey key;
+    private final Sort.Direction direction;
+    private final int size;
+    private final Long afterId;
+    private final Object afterValue;
+
+    private ProductCursor(SortKey key, Sort.Direction direction, int size, Long afterId, Object afterValue) {
+        this.key = key;
+        this.direction = direction;
+        this.size = size;
+        this.afterId = afterId;
+        this.afterValue = afterValue;
+    }
+
+    static ProductCursor of(ProductPageRequest page, SortKey defaultKey) {
+        SortKey key = page.getSort() == null ? defaultKey : SortKey.of(page.getSort());
+        Sort.Direction direction = Sort.Direction.fromOptionalString(page.getDirection())
+                .orElseThrow(() -> new InvalidPageRequestException("Unsupported sort direction: " + page.getDirection()));
+        String token = page.getCursor();
+        if (token == null || token.isEmpty()) {
+            return new ProductCursor(key, direction, page.getSize(), null, null);
+        }
+
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split(":", 4);
+        } catch (IllegalArgumentException ex) {
+            throw new InvalidPageRequestException("Malformed cursor");
+        }
+        if (parts.length != 4
+                || !parts[0].equals(key.property)
+                || !parts[1].equals(direction.name().toLowerCase(Locale.ROOT))) {
+            throw new InvalidPageRequestException("Cursor does not match the requested sort order");
+        }
+        try {
+            return new ProductCursor(key, direction, page.getSize(), Long.valueOf(parts[2]), key.parser.apply(parts[3]));
+        } catch (NumberFormatException ex) {
+            throw new InvalidPageRequestException("Malformed cursor");
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean sortedBy(SortKey sortKey) {
+        return key == sortKey;
+    }
+
+    boolean ascending() {
+        return direction.isAscending();
+    }
+
+    /** Id of the last row of the previous page, {@code null} on the first page. */
+    Long afterId() {
+        return afterId;
+    }
+
+    /** Sort value of the last row of the previous page, {@code null} on the first page. */
+    Object afterValue() {
+        return afterValue;
+    }
+
+    Sort sort() {
+        Sort sort = Sort.by(direction, key.property);
+        return key == SortKey.ID ? sort : sort.and(Sort.by(direction, "id"));
+    }
+
+    /**
+     * Keyset predicate selecting rows strictly after the previous page in {@link #sort()} order,
+     * or {@code null} on the first page.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    Predicate after(Root<ProductEntity> root, CriteriaBuilder cb) {
+        if (afterId == null) {
+            return null;
+        }
+        Path<Long> id = root.get("id");
+        Predicate idAfter = ascending() ? cb.greaterThan(id, afterId) : cb.lessThan(id, afterId);
+        if (key == SortKey.ID) {
+            return idAfter;
+        }
+        Path<Comparable> value = root.get(key.property);
+        Comparable after = (Comparable) afterValue;
+        Predicate valueAfter = ascending() ? cb.greaterThan(value, after) : cb.lessThan(value, after);
+        return cb.or(valueAfter, cb.and(cb.equal(value, after), idAfter));
+    }
+
+    String next(ProductResponse last) {
+        return next(last.getId(), key.extractor.apply(last));
+    }
+
+    String next(Long lastId, Object lastValue) {
+        String raw = key.property + ":" + direction.name().toLowerCase(Locale.ROOT) + ":" + lastId + ":" + lastValue;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
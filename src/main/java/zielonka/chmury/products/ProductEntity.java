@@ -14,8 +14,10 @@ import java.time.LocalDateTime;
 @AllArgsConstructor
 @Builder
 public class ProductEntity {
+    // Pooled sequence instead of IDENTITY so Hibernate can batch inserts
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "products_seq")
+    @SequenceGenerator(name = "products_seq", sequenceName = "products_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false, length = 100)
@@ -40,6 +42,11 @@ public class ProductEntity {
     @Column
     private LocalDateTime updatedAt;
 
+    // Default lets ddl-auto add the column to existing rows
+    @Version
+    @Column(nullable = false, columnDefinition = "bigint default 0")
+    private long version;
+
     @PrePersist
     protected void onCreate() {
         createdAt = LocalDateTime.now();
@@ -0,0 +1,17 @@
+package zielonka.chmury.products;
+
+import zielonka.chmury.products.dto.ProductRequest;
+
+/**
+ * One row of a bulk import: either a parsed request or the reason it could not be parsed.
+ */
+record ProductImportRow(int row, ProductRequest request, String name, String error) {
+
+    static ProductImportRow of(int row, ProductRequest request) {
+        return new ProductImportRow(row, request, request.getName(), null);
+    }
+
+    static ProductImportRow invalid(int row, String name, String error) {
+        return new ProductImportRow(row, null, name, error);
+    }
+}
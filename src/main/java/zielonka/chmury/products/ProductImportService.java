@@ -0,0 +1,196 @@
+package zielonka.chmury.products;
+
+import jakarta.persistence.EntityManager;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import zielonka.chmury.CacheConfiguration;
+import zielonka.chmury.products.dto.BulkImportResponse;
+import zielonka.chmury.products.dto.ProductRequest;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Bulk product import. Rows are processed in chunks: each chunk is validated, checked for name
+ * clashes with a single set-based query and inserted in its own transaction through JDBC batches.
+ * Invalid rows are reported individually and never fail the rest of the import.
+ */
+@Service
+@Slf4j
+public class ProductImportService {
+
+    private final ProductRepository productRepository;
+    private final ProductMapper productMapper;
+    private final EntityManager entityManager;
+    private final Validator validator;
+    private final CacheManager cacheManager;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final int maxRows;
+    private final int chunkSize;
+    private final int batchSize;
+
+    public ProductImportService(ProductRepository productRepository,
+                                ProductMapper productMapper,
+                                EntityManager entityManager,
+                                Validator validator,
+                                CacheManager cacheManager,
+                                ApplicationEventPublisher eventPublisher,
+                                PlatformTransactionManager transactionManager,
+                                @Value("${products.import.max-rows}") int maxRows,
+                                @Value("${products.import.chunk-size}") int chunkSize,
+                                @Value("${spring.jpa.properties.hibernate.jdbc.batch_size}") int batchSize) {
+        this.productRepository = productRepository;
+        this.productMapper = productMapper;
+        this.entityManager = entityManager;
+        this.validator = validator;
+        this.cacheManager = cacheManager;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.maxRows = maxRows;
+        this.chunkSize = chunkSize;
+        this.batchSize = batchSize;
+    }
+
+    public BulkImportResponse importProducts(List<ProductRequest> requests) {
+        List<ProductImportRow> rows = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            ProductRequest request = requests.get(i);
+            rows.add(request == null
+                    ? ProductImportRow.invalid(i + 1, null, "Row is empty")
+                    : ProductImportRow.of(i + 1, request));
+        }
+        return importRows(rows.iterator());
+    }
+
+    public BulkImportResponse importCsv(InputStream input) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            return importRows(new ProductCsvReader(reader));
+        }
+    }
+
+    private BulkImportResponse importRows(Iterator<ProductImportRow> rows) {
+        BulkImportResponse report = new BulkImportResponse();
+        Set<String> seenNames = new HashSet<>();
+        List<ProductImportRow> chunk = new ArrayList<>(chunkSize);
+        while (rows.hasNext()) {
+            ProductImportRow row = rows.next();
+            if (report.getReceived() >= maxRows) {
+                reject(report, row, "Import is limited to " + maxRows + " rows, this and following rows were skipped");
+                break;
+            }
+            report.setReceived(report.getReceived() + 1);
+            chunk.add(row);
+            if (chunk.size() == chunkSize) {
+                importChunk(chunk, seenNames, report);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            importChunk(chunk, seenNames, report);
+        }
+        log.info("Import produktów: {} wierszy, {} zapisanych, {} odrzuconych",
+                report.getReceived(), report.getImported(), report.getErrors().size());
+        return report;
+    }
+
+    private void importChunk(List<ProductImportRow> chunk, Set<String> seenNames, BulkImportResponse report) {
+        List<ProductImportRow> valid = new ArrayList<>(chunk.size());
+        for (ProductImportRow row : chunk) {
+            String error = row.error() != null ? row.error() : validate(row.request());
+            if (error == null && !seenNames.add(row.request().getName())) {
+                error = "Duplicate name within the import";
+            }
+            if (error != null) {
+                reject(report, row, error);
+            } else {
+                valid.add(row);
+            }
+        }
+        if (valid.isEmpty()) {
+            return;
+        }
+
+        try {
+            List<ProductImportRow> clashing = new ArrayList<>();
+            int inserted = transactionTemplate.execute(status -> insert(valid, clashing));
+            report.setImported(report.getImported() + inserted);
+            for (ProductImportRow row : clashing) {
+                reject(report, row, "Product with this name already exists");
+            }
+        } catch (RuntimeException ex) {
+            log.warn("Import chunk of {} rows failed", valid.size(), ex);
+            for (ProductImportRow row : valid) {
+                reject(report, row, "Insert failed: " + ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Inserts rows whose names are not taken yet and returns how many were inserted; rows clashing
+     * with existing products are collected in {@code clashing}.
+     */
+    private int insert(List<ProductImportRow> rows, List<ProductImportRow> clashing) {
+        Set<String> names = rows.stream().map(r -> r.request().getName()).collect(Collectors.toSet());
+        Set<String> existing = productRepository.findExistingNames(names);
+
+        List<ProductChangedEvent> changes = new ArrayList<>(rows.size());
+        Set<ProductCategory> categories = EnumSet.noneOf(ProductCategory.class);
+        for (ProductImportRow row : rows) {
+            if (existing.contains(row.request().getName())) {
+                clashing.add(row);
+                continue;
+            }
+            ProductEntity entity = productMapper.toEntity(row.request());
+            entityManager.persist(entity);
+            changes.add(ProductChangedEvent.saved(entity));
+            categories.add(entity.getCategory());
+            if (changes.size() % batchSize == 0) {
+                entityManager.flush();
+                entityManager.clear();
+            }
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        Cache cache = cacheManager.getCache(CacheConfiguration.PRODUCTS_BY_CATEGORY);
+        if (cache != null) {
+            categories.forEach(cache::evict);
+        }
+        eventPublisher.publishEvent(new ProductsImportedEvent(changes));
+        return changes.size();
+    }
+
+    private String validate(ProductRequest request) {
+        Set<ConstraintViolation<ProductRequest>> violations = validator.validate(request);
+        if (violations.isEmpty()) {
+            return null;
+        }
+        return violations.stream()
+                .map(ConstraintViolation::getMessage)
+                .sorted()
+                .collect(Collectors.joining("; "));
+    }
+
+    private static void reject(BulkImportResponse report, ProductImportRow row, String message) {
+        report.getErrors().add(new BulkImportResponse.RowError(row.row(), row.name(), message));
+    }
+}
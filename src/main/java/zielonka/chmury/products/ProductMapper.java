@@ -28,6 +28,7 @@ public class ProductMapper {
         response.setStockQuantity(entity.getStockQuantity());
         response.setCreatedAt(entity.getCreatedAt());
         response.setUpdatedAt(entity.getUpdatedAt());
+        response.setVersion(entity.getVersion());
         return response;
     }
 }
@@ -0,0 +1,307 @@
+package zielonka.chmury.products;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Trigram inverted index over product names, used instead of {@code lower(name) LIKE '%x%'}.
+ * <p>
+ * Every product occupies a slot; each trigram of its lower-cased name maps to a sorted {@code int[]}
+ * posting list of slots. A query intersects the posting lists of its own trigrams, confirms the
+ * substring match on the few remaining candidates and ranks them: exact match, then prefix, then
+ * word prefix, then any other occurrence, shorter names first. Queries shorter than three
+ * characters scan the names directly.
+ */
+@Component
+@Slf4j
+public class ProductNameIndex {
+
+    private static final int EXACT = 0;
+    private static final int PREFIX = 1;
+    private static final int WORD_PREFIX = 2;
+    private static final int INFIX = 3;
+
+    private final ProductRepository productRepository;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<Long, Integer> slotById = new HashMap<>();
+    private final Map<Long, Postings> postings = new HashMap<>();
+    private long[] ids = new long[1024];
+    private String[] names = new String[1024];
+    private int[] freeSlots = new int[16];
+    private int freeCount;
+    private int slotCount;
+    private volatile boolean ready;
+
+    public ProductNameIndex(ProductRepository productRepository) {
+        this.productRepository = productRepository;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        lock.writeLock().lock();
+        try {
+            // Loaded under the write lock so that change events committed meanwhile are applied afterwards
+            List<Object[]> rows = productRepository.findAllIdsAndNames();
+            slotById.clear();
+            postings.clear();
+            ids = new long[Math.max(1024, rows.size())];
+            names = new String[ids.length];
+            freeCount = 0;
+            slotCount = 0;
+            for (Object[] row : rows) {
+                put((Long) row[0], (String) row[1]);
+            }
+            ready = true;
+            log.info("Indeks nazw produktów zbudowany: {} produktów, {} trigramów", rows.size(), postings.size());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        lock.writeLock().lock();
+        try {
+            if (event.deleted()) {
+                remove(event.id());
+            } else {
+                put(event.id(), event.name());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductsImported(ProductsImportedEvent event) {
+        lock.writeLock().lock();
+        try {
+            for (ProductChangedEvent change : event.changes()) {
+                put(change.id(), change.name());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Returns IDs of products whose name contains {@code query} (case-insensitive), best matches first.
+     */
+    public List<Long> search(String query, int limit) {
+        String q = normalize(query);
+        if (q.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+
+        lock.readLock().lock();
+        try {
+            long[] ranked = q.length() < 3 ? scan(q) : lookup(q);
+            Arrays.sort(ranked);
+            int n = Math.min(limit, ranked.length);
+            List<Long> result = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                result.add(ids[(int) ranked[i]]);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private long[] lookup(String q) {
+        long[] grams = trigrams(q);
+        Postings[] lists = new Postings[grams.length];
+        for (int i = 0; i < grams.length; i++) {
+            lists[i] = postings.get(grams[i]);
+            if (lists[i] == null) {
+                return new long[0];
+            }
+        }
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.size, b.size));
+
+        Postings smallest = lists[0];
+        long[] ranked = new long[smallest.size];
+        int count = 0;
+        candidates:
+        for (int i = 0; i < smallest.size; i++) {
+            int slot = smallest.slots[i];
+            for (int j = 1; j < lists.length; j++) {
+                if (!lists[j].contains(slot)) {
+                    continue candidates;
+                }
+            }
+            long key = rankKey(names[slot], q, slot);
+            if (key >= 0) {
+                ranked[count++] = key;
+            }
+        }
+        return Arrays.copyOf(ranked, count);
+    }
+
+    private long[] scan(String q) {
+        long[] ranked = new long[16];
+        int count = 0;
+        for (int slot = 0; slot < slotCount; slot++) {
+            String name = names[slot];
+            if (name == null) {
+                continue;
+            }
+            long key = rankKey(name, q, slot);
+            if (key >= 0) {
+                if (count == ranked.length) {
+                    ranked = Arrays.copyOf(ranked, count * 2);
+                }
+                ranked[count++] = key;
+            }
+        }
+        return Arrays.copyOf(ranked, count);
+    }
+
+    /**
+     * Packs match quality, name length and slot into one sortable long, or returns -1 if the name
+     * does not contain the query (trigram hits are only candidates).
+     */
+    private static long rankKey(String name, String q, int slot) {
+        int at = name.indexOf(q);
+        if (at < 0) {
+            return -1;
+        }
+        int quality = INFIX;
+        if (at == 0) {
+            quality = name.length() == q.length() ? EXACT : PREFIX;
+        } else {
+            for (int i = at; i > 0; i = name.indexOf(q, i + 1)) {
+                if (!Character.isLetterOrDigit(name.charAt(i - 1))) {
+                    quality = WORD_PREFIX;
+                    break;
+                }
+            }
+        }
+        long length = Math.min(name.length(), 0xFFFFFF);
+        return ((long) quality << 56) | (length << 32) | slot;
+    }
+
+    private void put(Long id, String name) {
+        String normalized = normalize(name);
+        Integer existing = slotById.get(id);
+        if (existing != null) {
+            if (normalized.equals(names[existing])) {
+                return;
+            }
+            unindex(existing);
+        }
+        int slot = existing != null ? existing : allocateSlot();
+        ids[slot] = id;
+        names[slot] = normalized;
+        slotById.put(id, slot);
+        for (long gram : trigrams(normalized)) {
+            postings.computeIfAbsent(gram, g -> new Postings()).add(slot);
+        }
+    }
+
+    private void remove(Long id) {
+        Integer slot = slotById.remove(id);
+        if (slot == null) {
+            return;
+        }
+        unindex(slot);
+        names[slot] = null;
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        }
+        freeSlots[freeCount++] = slot;
+    }
+
+    private void unindex(int slot) {
+        for (long gram : trigrams(names[slot])) {
+            Postings list = postings.get(gram);
+            if (list != null && list.remove(slot) && list.size == 0) {
+                postings.remove(gram);
+            }
+        }
+    }
+
+    private int allocateSlot() {
+        if (freeCount > 0) {
+            return freeSlots[--freeCount];
+        }
+        if (slotCount == ids.length) {
+            ids = Arrays.copyOf(ids, slotCount * 2);
+            names = Arrays.copyOf(names, slotCount * 2);
+        }
+        return slotCount++;
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /** Distinct trigrams of the text, each packed as three UTF-16 code units into a long. */
+    private static long[] trigrams(String text) {
+        if (text.length() < 3) {
+            return new long[0];
+        }
+        long[] grams = new long[text.length() - 2];
+        for (int i = 0; i < grams.length; i++) {
+            grams[i] = ((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2);
+        }
+        Arrays.sort(grams);
+        int distinct = 0;
+        for (int i = 0; i < grams.length; i++) {
+            if (i == 0 || grams[i] != grams[i - 1]) {
+                grams[distinct++] = grams[i];
+            }
+        }
+        return Arrays.copyOf(grams, distinct);
+    }
+
+    /** Sorted, growable list of slots. */
+    private static final class Postings {
+        private int[] slots = new int[4];
+        private int size;
+
+        boolean contains(int slot) {
+            return Arrays.binarySearch(slots, 0, size, slot) >= 0;
+        }
+
+        void add(int slot) {
+            int at = Arrays.binarySearch(slots, 0, size, slot);
+            if (at >= 0) {
+                return;
+            }
+            at = -at - 1;
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+            }
+            System.arraycopy(slots, at, slots, at + 1, size - at);
+            slots[at] = slot;
+            size++;
+        }
+
+        boolean remove(int slot) {
+            int at = Arrays.binarySearch(slots, 0, size, slot);
+            if (at < 0) {
+                return false;
+            }
+            System.arraycopy(slots, at + 1, slots, at, size - at - 1);
+            size--;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package zielonka.chmury.products;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory price index partitioned by {@link ProductCategory}. Each partition keeps prices as long
+ * cents in a sorted primitive array, with product ids as tie-breaker in a parallel array, so a range
+ * lookup is two binary searches. Partitions are immutable snapshots replaced on every write, which
+ * keeps reads lock-free.
+ */
+@Component
+@Slf4j
+public class ProductPriceIndex {
+
+    private static final ProductCategory[] CATEGORIES = ProductCategory.values();
+
+    private final ProductRepository productRepository;
+    private final Map<Long, Entry> entries = new HashMap<>();
+    private volatile Partition[] partitions = emptyPartitions();
+    private volatile boolean ready;
+
+    public ProductPriceIndex(ProductRepository productRepository) {
+        this.productRepository = productRepository;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void rebuild() {
+        // Loaded while holding the monitor so that change events committed meanwhile are applied afterwards
+        List<Object[]> rows = productRepository.findAllIdsPricesAndCategories();
+        entries.clear();
+        for (Object[] row : rows) {
+            entries.put((Long) row[0], new Entry((ProductCategory) row[2], toCents((BigDecimal) row[1], RoundingMode.HALF_UP)));
+        }
+        Partition[] rebuilt = emptyPartitions();
+        for (ProductCategory category : CATEGORIES) {
+            rebuilt[category.ordinal()] = Partition.of(entries, category);
+        }
+        partitions = rebuilt;
+        ready = true;
+        log.info("Indeks cen produktów zbudowany: {} produktów", entries.size());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onProductChanged(ProductChangedEvent event) {
+        Entry previous = entries.get(event.id());
+        Entry current = event.deleted() ? null : new Entry(event.category(), toCents(event.price(), RoundingMode.HALF_UP));
+        if (previous != null && previous.equals(current)) {
+            return;
+        }
+
+        Partition[] updated = partitions.clone();
+        if (previous != null) {
+            int p = previous.category().ordinal();
+            updated[p] = updated[p].without(previous.cents(), event.id());
+            entries.remove(event.id());
+        }
+        if (current != null) {
+            int p = current.category().ordinal();
+            updated[p] = updated[p].with(current.cents(), event.id());
+            entries.put(event.id(), current);
+        }
+        partitions = updated;
+    }
+
+    /**
+     * Applies a whole import batch, re-sorting each affected partition once instead of copying it per row.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onProductsImported(ProductsImportedEvent event) {
+        EnumSet<ProductCategory> affected = EnumSet.noneOf(ProductCategory.class);
+        for (ProductChangedEvent change : event.changes()) {
+            Entry previous = entries.put(change.id(), new Entry(change.category(), toCents(change.price(), RoundingMode.HALF_UP)));
+            if (previous != null) {
+                affected.add(previous.category());
+            }
+            affected.add(change.category());
+        }
+        Partition[] updated = partitions.clone();
+        for (ProductCategory category : affected) {
+            updated[category.ordinal()] = Partition.of(entries, category);
+        }
+        partitions = updated;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Returns up to {@code limit} ids of products priced within {@code [minPrice, maxPrice]}, ordered by
+     * (price, id) in the given direction and starting strictly after the keyset position
+     * ({@code afterPrice}, {@code afterId}) when one is given.
+     *
+     * @param category restricts the lookup to one partition, or {@code null} for all categories
+     */
+    public List<Long> range(ProductCategory category, BigDecimal minPrice, BigDecimal maxPrice,
+                            BigDecimal afterPrice, Long afterId, boolean ascending, int limit) {
+        long min = minPrice == null ? Long.MIN_VALUE : toCents(minPrice, RoundingMode.CEILING);
+        long max = maxPrice == null ? Long.MAX_VALUE : toCents(maxPrice, RoundingMode.FLOOR);
+        if (min > max || limit <= 0) {
+            return List.of();
+        }
+
+        Partition[] snapshot = partitions;
+        List<Partition> parts = new ArrayList<>();
+        List<int[]> bounds = new ArrayList<>();
+        for (ProductCategory c : CATEGORIES) {
+            if (category != null && c != category) {
+                continue;
+            }
+            Partition part = snapshot[c.ordinal()];
+            int from = part.firstAtLeast(min);
+            int to = part.firstAbove(max);
+            if (afterId != null) {
+                long afterCents = toCents(afterPrice, RoundingMode.HALF_UP);
+                if (ascending) {
+                    from = Math.max(from, part.firstAfter(afterCents, afterId));
+                } else {
+                    to = Math.min(to, part.firstAfter(afterCents, afterId - 1));
+                }
+            }
+            if (from < to) {
+                parts.add(part);
+                // Cursor within [from, to): ascending walks up from "from", descending walks down from "to"
+                bounds.add(new int[]{from, to});
+            }
+        }
+
+        List<Long> ids = new ArrayList<>(Math.min(limit, 1024));
+        while (ids.size() < limit) {
+            int best = -1;
+            for (int i = 0; i < parts.size(); i++) {
+                int[] b = bounds.get(i);
+                if (b[0] >= b[1]) {
+                    continue;
+                }
+                if (best < 0 || precedes(parts.get(i), ascending ? b[0] : b[1] - 1,
+                        parts.get(best), ascending ? bounds.get(best)[0] : bounds.get(best)[1] - 1, ascending)) {
+                    best = i;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            int[] b = bounds.get(best);
+            Partition part = parts.get(best);
+            if (ascending) {
+                ids.add(part.ids[b[0]++]);
+            } else {
+                ids.add(part.ids[--b[1]]);
+            }
+        }
+        return ids;
+    }
+
+    private static boolean precedes(Partition a, int i, Partition b, int j, boolean ascending) {
+        int cmp = Partition.compare(a.cents[i], a.ids[i], b.cents[j], b.ids[j]);
+        return ascending ? cmp < 0 : cmp > 0;
+    }
+
+    /** Price in cents, saturated to the long range for out-of-range query bounds. */
+    private static long toCents(BigDecimal price, RoundingMode rounding) {
+        BigInteger cents = price.setScale(2, rounding).unscaledValue();
+        if (cents.bitLength() < 64) {
+            return cents.longValue();
+        }
+        return cents.signum() > 0 ? Long.MAX_VALUE : Long.MIN_VALUE;
+    }
+
+    private static Partition[] emptyPartitions() {
+        Partition[] result = new Partition[CATEGORIES.length];
+        Arrays.fill(result, Partition.EMPTY);
+        return result;
+    }
+
+    private record Entry(ProductCategory category, long cents) {
+    }
+
+    /** Immutable pair of arrays sorted by (cents, id). */
+    private static final class Partition {
+        static final Partition EMPTY = new Partition(new long[0], new long[0]);
+
+        final long[] cents;
+        final long[] ids;
+
+        private Partition(long[] cents, long[] ids) {
+            this.cents = cents;
+            this.ids = ids;
+        }
+
+        static Partition of(Map<Long, Entry> entries, ProductCategory category) {
+            long[][] pairs = entries.entrySet().stream()
+                    .filter(e -> e.getValue().category() == category)
+                    .map(e -> new long[]{e.getValue().cents(), e.getKey()})
+                    .sorted((a, b) -> compare(a[0], a[1], b[0], b[1]))
+                    .toArray(long[][]::new);
+            long[] cents = new long[pairs.length];
+            long[] ids = new long[pairs.length];
+            for (int i = 0; i < pairs.length; i++) {
+                cents[i] = pairs[i][0];
+                ids[i] = pairs[i][1];
+            }
+            return new Partition(cents, ids);
+        }
+
+        static int compare(long centsA, long idA, long centsB, long idB) {
+            int cmp = Long.compare(centsA, centsB);
+            return cmp != 0 ? cmp : Long.compare(idA, idB);
+        }
+
+        /** Index of the first entry strictly greater than (cents, id). */
+        int firstAfter(long c, long id) {
+            int lo = 0;
+            int hi = cents.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (compare(cents[mid], ids[mid], c, id) <= 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        int firstAtLeast(long c) {
+            return c == Long.MIN_VALUE ? 0 : firstAfter(c - 1, Long.MAX_VALUE);
+        }
+
+        int firstAbove(long c) {
+            return firstAfter(c, Long.MAX_VALUE);
+        }
+
+        Partition with(long c, long id) {
+            int at = firstAfter(c, id);
+            long[] newCents = new long[cents.length + 1];
+            long[] newIds = new long[ids.length + 1];
+            System.arraycopy(cents, 0, newCents, 0, at);
+            System.arraycopy(ids, 0, newIds, 0, at);
+            newCents[at] = c;
+            newIds[at] = id;
+            System.arraycopy(cents, at, newCents, at + 1, cents.length - at);
+            System.arraycopy(ids, at, newIds, at + 1, ids.length - at);
+            return new Partition(newCents, newIds);
+        }
+
+        Partition without(long c, long id) {
+            int at = firstAfter(c, id) - 1;
+            if (at < 0 || cents[at] != c || ids[at] != id) {
+                return this;
+            }
+            long[] newCents = new long[cents.length - 1];
+            long[] newIds = new long[ids.length - 1];
+            System.arraycopy(cents, 0, newCents, 0, at);
+            System.arraycopy(ids, 0, newIds, 0, at);
+            System.arraycopy(cents, at + 1, newCents, at, cents.length - at - 1);
+            System.arraycopy(ids, at + 1, newIds, at, ids.length - at - 1);
+            return new Partition(newCents, newIds);
+        }
+    }
+}
@@ -1,16 +1,29 @@
 package zielonka.chmury.products;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import zielonka.chmury.products.dto.ProductResponse;
 
 import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
 @Repository
-public interface ProductRepository extends JpaRepository<ProductEntity, Long> {
+public interface ProductRepository extends JpaRepository<ProductEntity, Long>, JpaSpecificationExecutor<ProductEntity>,
+        ProductRepositoryCustom {
+
+    /** Constructor projection shared by the read queries; arguments follow the {@link ProductResponse} fields. */
+    String RESPONSE = "new zielonka.chmury.products.dto.ProductResponse(p.id, p.name, p.description, p.price, "
+            + "p.category, p.stockQuantity, p.createdAt, p.updatedAt, p.version)";
 
     List<ProductEntity> findByCategory(ProductCategory category);
 
@@ -26,7 +39,29 @@ public interface ProductRepository extends JpaRepository<ProductEntity, Long> {
             @Param("category") ProductCategory category,
             @Param("maxPrice") BigDecimal maxPrice);
 
+    @Query("SELECT p.id, p.name FROM ProductEntity p")
+    List<Object[]> findAllIdsAndNames();
+
+    @Query("SELECT p.id, p.price, p.category FROM ProductEntity p")
+    List<Object[]> findAllIdsPricesAndCategories();
+
+    @Query("SELECT " + RESPONSE + " FROM ProductEntity p WHERE p.id = :id")
+    Optional<ProductResponse> findResponseById(@Param("id") Long id);
+
+    @Query("SELECT " + RESPONSE + " FROM ProductEntity p WHERE p.id IN :ids")
+    List<ProductResponse> findResponsesByIds(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Streams the whole catalog through a server-side cursor. Must be consumed inside a transaction.
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("SELECT " + RESPONSE + " FROM ProductEntity p ORDER BY p.id")
+    Stream<ProductResponse> streamAllResponses();
+
     boolean existsByName(String name);
 
+    @Query("SELECT p.name FROM ProductEntity p WHERE p.name IN :names")
+    Set<String> findExistingNames(@Param("names") Collection<String> names);
+
     Optional<ProductEntity> findByName(String name);
 }
@@ -0,0 +1,22 @@
+package zielonka.chmury.products;
+
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import zielonka.chmury.products.dto.ProductResponse;
+
+import java.util.List;
+
+/**
+ * Specification queries that select straight into {@link ProductResponse} instead of loading
+ * managed entities.
+ */
+public interface ProductRepositoryCustom {
+
+    /**
+     * Rows matching {@code spec} after the cursor position, in cursor order. Fetches one row more
+     * than the page size so the caller can tell whether another page follows.
+     */
+    List<ProductResponse> findResponses(Specification<ProductEntity> spec, ProductCursor cursor);
+
+    List<ProductResponse> findResponses(Specification<ProductEntity> spec, Sort sort, int limit);
+}
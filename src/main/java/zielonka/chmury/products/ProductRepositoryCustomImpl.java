@@ -0,0 +1,70 @@
+package zielonka.chmury.products;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import zielonka.chmury.products.dto.ProductResponse;
+
+import java.util.List;
+
+class ProductRepositoryCustomImpl implements ProductRepositoryCustom {
+
+    private final EntityManager entityManager;
+
+    ProductRepositoryCustomImpl(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    @Override
+    public List<ProductResponse> findResponses(Specification<ProductEntity> spec, ProductCursor cursor) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<ProductResponse> query = cb.createQuery(ProductResponse.class);
+        Root<ProductEntity> root = query.from(ProductEntity.class);
+
+        Predicate where = spec.toPredicate(root, query, cb);
+        Predicate after = cursor.after(root, cb);
+        if (after != null) {
+            where = where == null ? after : cb.and(where, after);
+        }
+        select(query, root, cb, where, cursor.sort());
+        return entityManager.createQuery(query)
+                .setMaxResults(cursor.size() + 1)
+                .getResultList();
+    }
+
+    @Override
+    public List<ProductResponse> findResponses(Specification<ProductEntity> spec, Sort sort, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<ProductResponse> query = cb.createQuery(ProductResponse.class);
+        Root<ProductEntity> root = query.from(ProductEntity.class);
+
+        select(query, root, cb, spec.toPredicate(root, query, cb), sort);
+        return entityManager.createQuery(query)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    private static void select(CriteriaQuery<ProductResponse> query, Root<ProductEntity> root, CriteriaBuilder cb,
+                               Predicate where, Sort sort) {
+        // Same argument order as the ProductResponse constructor and ProductRepository's JPQL projections
+        query.select(cb.construct(ProductResponse.class,
+                root.get("id"),
+                root.get("name"),
+                root.get("description"),
+                root.get("price"),
+                root.get("category"),
+                root.get("stockQuantity"),
+                root.get("createdAt"),
+                root.get("updatedAt"),
+                root.get("version")));
+        if (where != null) {
+            query.where(where);
+        }
+        query.orderBy(QueryUtils.toOrders(sort, root, cb));
+    }
+}
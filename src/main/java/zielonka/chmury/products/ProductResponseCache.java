@@ -0,0 +1,144 @@
+package zielonka.chmury.products;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import zielonka.chmury.ETags;
+import zielonka.chmury.products.dto.ProductResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cache of serialized catalog responses, so hot reads skip both mapping and Jackson. Bodies above
+ * a size threshold are also kept gzip-compressed. Entries are invalidated after commit by the
+ * product change events; hit and miss counts are exported as {@code cache.gets{cache=productResponses}}.
+ * <p>
+ * Loaders must read the database, not the Spring product caches: those are updated after commit
+ * only after the events have bumped the generation, so a load in between would pass the generation
+ * check with the old response.
+ */
+@Component
+public class ProductResponseCache {
+
+    private final ObjectMapper objectMapper;
+    private final Cache<String, SerializedResponse> cache;
+    private final int gzipMinBytes;
+    // Bumped on every invalidation; a response loaded across an invalidation is not cached
+    private final AtomicLong generation = new AtomicLong();
+
+    public ProductResponseCache(ObjectMapper objectMapper,
+                                MeterRegistry meterRegistry,
+                                @Value("${products.response-cache.max-size-mib}") long maxSizeMiB,
+                                @Value("${products.response-cache.ttl}") Duration ttl,
+                                @Value("${products.response-cache.gzip-min-bytes}") int gzipMinBytes) {
+        this.objectMapper = objectMapper;
+        this.gzipMinBytes = gzipMinBytes;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxSizeMiB * 1024 * 1024)
+                .weigher((String key, SerializedResponse value) -> value.weight())
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "productResponses");
+    }
+
+    public SerializedResponse product(Long id, Supplier<ProductResponse> loader) {
+        return get("product:" + id, () -> {
+            ProductResponse product = loader.get();
+            return serialize(product, ETags.weak(product.getVersion()));
+        });
+    }
+
+    public SerializedResponse category(ProductCategory category, Supplier<?> loader) {
+        return get("category:" + category, () -> serialize(loader.get(), null));
+    }
+
+    private SerializedResponse get(String key, Supplier<SerializedResponse> loader) {
+        SerializedResponse cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        long loadedAt = generation.get();
+        SerializedResponse response = loader.get();
+        if (generation.get() == loadedAt) {
+            cache.put(key, response);
+        }
+        return response;
+    }
+
+    private SerializedResponse serialize(Object body, String etag) {
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(body);
+            return new SerializedResponse(json, json.length >= gzipMinBytes ? gzip(json) : null, etag);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("Cannot serialize response", ex);
+        }
+    }
+
+    private static byte[] gzip(byte[] json) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(json.length / 4);
+        try (GZIPOutputStream out = new GZIPOutputStream(buffer)) {
+            out.write(json);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return buffer.toByteArray();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        invalidate(event.id());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductsImported(ProductsImportedEvent event) {
+        invalidateCategories();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStockChanged(ProductStockChangedEvent event) {
+        generation.incrementAndGet();
+        event.ids().forEach(id -> cache.invalidate("product:" + id));
+        invalidateCategories();
+    }
+
+    /**
+     * Drops the product and every category page: an update may have moved the product out of a
+     * category, and the event only carries the new one. There are few categories, so this is cheap.
+     */
+    private void invalidate(Long id) {
+        generation.incrementAndGet();
+        cache.invalidate("product:" + id);
+        invalidateCategories();
+    }
+
+    private void invalidateCategories() {
+        generation.incrementAndGet();
+        for (ProductCategory category : ProductCategory.values()) {
+            cache.invalidate("category:" + category);
+        }
+    }
+
+    /**
+     * Serialized JSON body, plus its gzip encoding when the body is large enough to benefit.
+     *
+     * @param etag weak ETag of the resource, or {@code null} for collections
+     */
+    public record SerializedResponse(byte[] json, byte[] gzip, String etag) {
+        int weight() {
+            return json.length + (gzip != null ? gzip.length : 0);
+        }
+    }
+}
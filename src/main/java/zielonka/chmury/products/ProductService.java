@@ -1,81 +1,253 @@
 package zielonka.chmury.products;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.CachePut;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import zielonka.chmury.CacheConfiguration;
+import zielonka.chmury.ETags;
+import zielonka.chmury.PreconditionFailedException;
+import zielonka.chmury.products.dto.CursorPage;
+import zielonka.chmury.products.dto.ProductPageRequest;
 import zielonka.chmury.products.dto.ProductRequest;
 import zielonka.chmury.products.dto.ProductResponse;
 import zielonka.chmury.products.exception.ProductAlreadyExists;
 import zielonka.chmury.products.exception.ProductNotFoundException;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 @Transactional
 public class ProductService {
+    public static final int DEFAULT_SEARCH_LIMIT = 20;
+    public static final int MAX_SEARCH_LIMIT = 100;
+
     private final ProductRepository productRepository;
     private final ProductMapper productMapper;
+    private final CacheManager cacheManager;
+    private final ObjectMapper objectMapper;
+    private final ProductNameIndex productNameIndex;
+    private final ProductPriceIndex productPriceIndex;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Transactional(readOnly = true)
+    public CursorPage<ProductResponse> getAllProducts(ProductPageRequest page) {
+        log.debug("Pobieranie strony produktów");
+        return findPage(ProductSpecifications.all(), ProductCursor.of(page, ProductCursor.SortKey.ID));
+    }
 
-    public List<ProductResponse> getAllProducts() {
-        log.info("Pobieranie wszystkich produktów");
-        return productRepository.findAll().stream()
-                .map(productMapper::toResponse)
-                .collect(Collectors.toList());
+    /**
+     * Writes the whole catalog as newline-delimited JSON. Rows are read through a database cursor
+     * straight into response objects that are not tracked by the persistence context, so memory use
+     * does not depend on the catalog size.
+     *
+     * @return number of exported products
+     */
+    @Transactional(readOnly = true)
+    public long exportProducts(OutputStream out) throws IOException {
+        log.debug("Eksport katalogu produktów");
+        ObjectWriter writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        long count = 0;
+        try (Stream<ProductResponse> products = productRepository.streamAllResponses();
+             JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            // Lines are separated by the newline below, not by Jackson's default root separator (a space)
+            generator.setRootValueSeparator(null);
+            Iterator<ProductResponse> it = products.iterator();
+            while (it.hasNext()) {
+                writer.writeValue(generator, it.next());
+                generator.writeRaw('\n');
+                count++;
+            }
+        }
+        return count;
     }
 
+    @Cacheable(value = CacheConfiguration.PRODUCTS, key = "#id")
+    @Transactional(readOnly = true)
     public ProductResponse getProductById(Long id) {
-        log.info("Pobieranie produktu o ID: {}", id);
-        ProductEntity entity = productRepository.findById(id)
+        log.debug("Pobieranie produktu o ID: {}", id);
+        return findProductById(id);
+    }
+
+    /**
+     * {@link #getProductById} bypassing the products cache, for {@link ProductResponseCache}. That
+     * cache is invalidated by the change events, which run after commit before the products cache
+     * is updated; loading through the products cache in between would re-cache the old product.
+     */
+    @Transactional(readOnly = true)
+    public ProductResponse loadProductById(Long id) {
+        log.debug("Wczytywanie produktu o ID {} z bazy", id);
+        return findProductById(id);
+    }
+
+    private ProductResponse findProductById(Long id) {
+        return productRepository.findResponseById(id)
                 .orElseThrow(() -> new ProductNotFoundException(
                         "Produkt o ID " + id + " nie został znaleziony"));
-        return productMapper.toResponse(entity);
     }
 
-    public List<ProductResponse> getProductsByCategory(ProductCategory category) {
-        log.info("Wyszukiwanie produktów o kategorii: {}", category);
-        return productRepository.findByCategory(category).stream()
-                .map(productMapper::toResponse)
-                .collect(Collectors.toList());
+    @Cacheable(
+            value = CacheConfiguration.PRODUCTS_BY_CATEGORY,
+            key = "#category",
+            condition = "#page.firstDefaultPage"
+    )
+    @Transactional(readOnly = true)
+    public CursorPage<ProductResponse> getProductsByCategory(ProductCategory category, ProductPageRequest page) {
+        log.debug("Wyszukiwanie produktów o kategorii: {}", category);
+        return findPage(ProductSpecifications.hasCategory(category), ProductCursor.of(page, ProductCursor.SortKey.ID));
+    }
+
+    /**
+     * {@link #getProductsByCategory} bypassing the category cache, for {@link ProductResponseCache};
+     * see {@link #loadProductById}.
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<ProductResponse> loadProductsByCategory(ProductCategory category, ProductPageRequest page) {
+        log.debug("Wczytywanie produktów o kategorii {} z bazy", category);
+        return findPage(ProductSpecifications.hasCategory(category), ProductCursor.of(page, ProductCursor.SortKey.ID));
+    }
+
+    /**
+     * Case-insensitive substring search over product names, best matches first. Served from
+     * {@link ProductNameIndex}; falls back to the database until the index has been built.
+     */
+    @Transactional(readOnly = true)
+    public List<ProductResponse> searchProducts(String name, int limit) {
+        log.debug("Wyszukiwanie produktów o nazwie: {}", name);
+        int capped = Math.max(1, Math.min(limit, MAX_SEARCH_LIMIT));
+        if (!productNameIndex.isReady()) {
+            return productRepository.findResponses(ProductSpecifications.nameContains(name), Sort.by("name"), capped);
+        }
+        return findAllInOrder(productNameIndex.search(name, capped));
+    }
+
+    /**
+     * Products priced within {@code [minPrice, maxPrice]}, optionally limited to one category. Ordered by
+     * price unless another sort key is requested; price-ordered pages are served from
+     * {@link ProductPriceIndex}, other orders and lookups before the index is built go to the database.
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<ProductResponse> getProductsByPriceRange(BigDecimal minPrice, BigDecimal maxPrice,
+                                                               ProductCategory category, ProductPageRequest page) {
+        log.debug("Wyszukiwanie produktów w przedziale cenowym [{},{}]", minPrice, maxPrice);
+        ProductCursor cursor = ProductCursor.of(page, ProductCursor.SortKey.PRICE);
+        if (!productPriceIndex.isReady() || !cursor.sortedBy(ProductCursor.SortKey.PRICE)) {
+            Specification<ProductEntity> spec = ProductSpecifications.priceBetween(minPrice, maxPrice);
+            if (category != null) {
+                spec = spec.and(ProductSpecifications.hasCategory(category));
+            }
+            return findPage(spec, cursor);
+        }
+
+        List<Long> ids = productPriceIndex.range(category, minPrice, maxPrice,
+                (BigDecimal) cursor.afterValue(), cursor.afterId(), cursor.ascending(), cursor.size() + 1);
+        boolean hasNext = ids.size() > cursor.size();
+        List<ProductResponse> items = findAllInOrder(hasNext ? ids.subList(0, cursor.size()) : ids);
+        String nextCursor = null;
+        if (hasNext && !items.isEmpty()) {
+            ProductResponse last = items.get(items.size() - 1);
+            nextCursor = cursor.next(last.getId(), last.getPrice());
+        }
+        return new CursorPage<>(items, nextCursor);
     }
 
-    public List<ProductResponse> searchProducts(String name) {
-        log.info("Wyszukiwanie produktów o nazwie: {}", name);
-        return productRepository.findByNameContainingIgnoreCase(name).stream()
-                .map(productMapper::toResponse)
-                .collect(Collectors.toList());
+    /**
+     * Loads products in the given order, taking cached ones from the products cache and the rest
+     * with a single query. IDs deleted in the meantime are skipped.
+     */
+    private List<ProductResponse> findAllInOrder(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        Cache cache = cacheManager.getCache(CacheConfiguration.PRODUCTS);
+        Map<Long, ProductResponse> byId = new HashMap<>();
+        List<Long> missing = new ArrayList<>();
+        for (Long id : ids) {
+            ProductResponse cached = cache != null ? cache.get(id, ProductResponse.class) : null;
+            if (cached != null) {
+                byId.put(id, cached);
+            } else {
+                missing.add(id);
+            }
+        }
+        if (!missing.isEmpty()) {
+            for (ProductResponse response : productRepository.findResponsesByIds(missing)) {
+                byId.put(response.getId(), response);
+            }
+        }
+
+        List<ProductResponse> result = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            ProductResponse response = byId.get(id);
+            if (response != null) {
+                result.add(response);
+            }
+        }
+        return result;
     }
 
-    public List<ProductResponse> getProductsByPriceRange(BigDecimal minPrice, BigDecimal maxPrice) {
-        log.info("Wyszukiwanie produktów w przedziale cenowym [{},{}]", minPrice, maxPrice);
-        return productRepository.findByPriceBetween(minPrice, maxPrice).stream()
-                .map(productMapper::toResponse)
-                .collect(Collectors.toList());
+    private CursorPage<ProductResponse> findPage(Specification<ProductEntity> spec, ProductCursor cursor) {
+        List<ProductResponse> rows = productRepository.findResponses(spec, cursor);
+        boolean hasNext = rows.size() > cursor.size();
+        List<ProductResponse> items = hasNext ? new ArrayList<>(rows.subList(0, cursor.size())) : rows;
+        String nextCursor = hasNext && !items.isEmpty()
+                ? cursor.next(items.get(items.size() - 1))
+                : null;
+        return new CursorPage<>(items, nextCursor);
     }
 
-    @CacheEvict(value = "products", allEntries = true)
+    @CacheEvict(value = CacheConfiguration.PRODUCTS_BY_CATEGORY, key = "#request.category")
     public ProductResponse createProduct(ProductRequest request) {
-        log.info("Tworzenie produktu o nazwie {}", request.getName());
+        log.debug("Tworzenie produktu o nazwie {}", request.getName());
         if (productRepository.existsByName(request.getName())) {
             throw new ProductAlreadyExists();
         }
 
         ProductEntity toSave = productMapper.toEntity(request);
         ProductEntity saved = productRepository.save(toSave);
+        eventPublisher.publishEvent(ProductChangedEvent.saved(saved));
         return productMapper.toResponse(saved);
     }
 
-    public ProductResponse updateProduct(Long id, ProductRequest request) {
-        log.info("Aktualizowanie produktu o ID {}", id);
+    @Caching(
+            put = @CachePut(value = CacheConfiguration.PRODUCTS, key = "#id"),
+            evict = @CacheEvict(value = CacheConfiguration.PRODUCTS_BY_CATEGORY, key = "#request.category")
+    )
+    public ProductResponse updateProduct(Long id, ProductRequest request, String ifMatch) {
+        log.debug("Aktualizowanie produktu o ID {}", id);
 
         ProductEntity existing = productRepository.findById(id)
                 .orElseThrow(() -> new ProductNotFoundException(
                         "Produkt o ID " + id + " nie został znaleziony"));
+        ETags.checkIfMatch(ifMatch, existing.getVersion());
+        if (existing.getCategory() != request.getCategory()) {
+            evictCategory(existing.getCategory());
+        }
 
         existing.setName(request.getName());
         existing.setDescription(request.getDescription());
@@ -84,14 +256,43 @@ public class ProductService {
         existing.setStockQuantity(request.getStockQuantity());
         existing.setUpdatedAt(java.time.LocalDateTime.now());
 
-        ProductEntity saved = productRepository.save(existing);
+        ProductEntity saved = saveAndFlush(existing);
+        eventPublisher.publishEvent(ProductChangedEvent.saved(saved));
         return productMapper.toResponse(saved);
     }
 
-    public void deleteProduct(Long id) {
-        if (!productRepository.existsById(id)) {
-            throw new ProductNotFoundException("Produck o ID  " + id + " nie został znaleziony");
+    @CacheEvict(value = CacheConfiguration.PRODUCTS, key = "#id")
+    public void deleteProduct(Long id, String ifMatch) {
+        ProductEntity existing = productRepository.findById(id)
+                .orElseThrow(() -> new ProductNotFoundException(
+                        "Produck o ID  " + id + " nie został znaleziony"));
+        ETags.checkIfMatch(ifMatch, existing.getVersion());
+        productRepository.delete(existing);
+        try {
+            productRepository.flush();
+        } catch (OptimisticLockingFailureException ex) {
+            throw new PreconditionFailedException("Produkt o ID " + id + " został zmieniony w międzyczasie");
+        }
+        evictCategory(existing.getCategory());
+        eventPublisher.publishEvent(ProductChangedEvent.deleted(id));
+    }
+
+    /**
+     * Flushes immediately so that a concurrent modification, detected by the version check in the
+     * UPDATE, is reported as a failed precondition instead of surfacing at commit.
+     */
+    private ProductEntity saveAndFlush(ProductEntity entity) {
+        try {
+            return productRepository.saveAndFlush(entity);
+        } catch (OptimisticLockingFailureException ex) {
+            throw new PreconditionFailedException("Produkt o ID " + entity.getId() + " został zmieniony w międzyczasie");
+        }
+    }
+
+    private void evictCategory(ProductCategory category) {
+        Cache cache = cacheManager.getCache(CacheConfiguration.PRODUCTS_BY_CATEGORY);
+        if (cache != null) {
+            cache.evict(category);
         }
-        productRepository.deleteById(id);
     }
 }
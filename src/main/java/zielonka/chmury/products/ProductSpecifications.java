@@ -0,0 +1,32 @@
+package zielonka.chmury.products;
+
+import org.springframework.data.jpa.domain.Specification;
+
+import java.math.BigDecimal;
+import java.util.Locale;
+
+final class ProductSpecifications {
+
+    private ProductSpecifications() {
+    }
+
+    static Specification<ProductEntity> all() {
+        return (root, query, cb) -> cb.conjunction();
+    }
+
+    static Specification<ProductEntity> hasCategory(ProductCategory category) {
+        return (root, query, cb) -> cb.equal(root.get("category"), category);
+    }
+
+    static Specification<ProductEntity> nameContains(String name) {
+        String pattern = "%" + name.toLowerCase(Locale.ROOT)
+                .replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_") + "%";
+        return (root, query, cb) -> cb.like(cb.lower(root.get("name")), pattern, '\\');
+    }
+
+    static Specification<ProductEntity> priceBetween(BigDecimal minPrice, BigDecimal maxPrice) {
+        return (root, query, cb) -> cb.between(root.get("price"), minPrice, maxPrice);
+    }
+}
@@ -0,0 +1,10 @@
+package zielonka.chmury.products;
+
+import java.util.Collection;
+
+/**
+ * Published by {@link ProductStockService} when reservations change the stock of products.
+ * Only stock and version change, so the name and price indexes ignore it.
+ */
+public record ProductStockChangedEvent(Collection<Long> ids) {
+}
@@ -0,0 +1,154 @@
+package zielonka.chmury.products;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import zielonka.chmury.CacheConfiguration;
+import zielonka.chmury.products.dto.ReservationRequest;
+import zielonka.chmury.products.dto.StockResponse;
+import zielonka.chmury.products.exception.InsufficientStockException;
+import zielonka.chmury.products.exception.ProductNotFoundException;
+
+import java.sql.Array;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Stock reservations. Every change is a single conditional UPDATE that checks and decrements the
+ * stock in one step, so concurrent orders neither lose updates nor hold locks beyond the row being
+ * changed. Orders for different products never wait on each other.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+@Transactional
+public class ProductStockService {
+
+    private static final String RESERVE_SQL = """
+            UPDATE products
+               SET stock_quantity = stock_quantity - ?, updated_at = now(), version = version + 1
+             WHERE id = ? AND stock_quantity >= ?
+            RETURNING id, stock_quantity, category""";
+
+    private static final String RELEASE_SQL = """
+            UPDATE products
+               SET stock_quantity = stock_quantity + ?, updated_at = now(), version = version + 1
+             WHERE id = ?
+            RETURNING id, stock_quantity, category""";
+
+    // Ids are passed sorted, so baskets sharing products normally lock them in the same order
+    private static final String RESERVE_BATCH_SQL = """
+            UPDATE products p
+               SET stock_quantity = p.stock_quantity - r.quantity, updated_at = now(), version = p.version + 1
+              FROM unnest(?::bigint[], ?::integer[]) AS r(id, quantity)
+             WHERE p.id = r.id AND p.stock_quantity >= r.quantity
+            RETURNING p.id, p.stock_quantity, p.category""";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ProductRepository productRepository;
+    private final CacheManager cacheManager;
+    private final ApplicationEventPublisher eventPublisher;
+
+    public StockResponse reserve(Long id, int quantity) {
+        log.debug("Rezerwacja {} szt. produktu o ID {}", quantity, id);
+        List<StockChange> changed = jdbcTemplate.query(RESERVE_SQL, STOCK_CHANGE, quantity, id, quantity);
+        if (changed.isEmpty()) {
+            throw missingOrInsufficient(id);
+        }
+        evict(changed);
+        return changed.get(0).toResponse();
+    }
+
+    public StockResponse release(Long id, int quantity) {
+        log.debug("Zwolnienie {} szt. produktu o ID {}", quantity, id);
+        List<StockChange> changed = jdbcTemplate.query(RELEASE_SQL, STOCK_CHANGE, quantity, id);
+        if (changed.isEmpty()) {
+            throw new ProductNotFoundException("Produkt o ID " + id + " nie został znaleziony");
+        }
+        evict(changed);
+        return changed.get(0).toResponse();
+    }
+
+    /**
+     * Reserves the whole basket with one statement, or nothing: if any product is missing or short on
+     * stock the transaction is rolled back and no stock is taken.
+     */
+    public List<StockResponse> reserveAll(List<ReservationRequest.Item> items) {
+        Map<Long, Integer> quantities = new TreeMap<>();
+        for (ReservationRequest.Item item : items) {
+            quantities.merge(item.getProductId(), item.getQuantity(), Math::addExact);
+        }
+        log.debug("Rezerwacja koszyka: {} produktów", quantities.size());
+
+        Long[] ids = quantities.keySet().toArray(Long[]::new);
+        Integer[] amounts = quantities.values().toArray(Integer[]::new);
+        List<StockChange> changed = jdbcTemplate.query(RESERVE_BATCH_SQL, ps -> {
+            Array idArray = ps.getConnection().createArrayOf("bigint", ids);
+            Array quantityArray = ps.getConnection().createArrayOf("integer", amounts);
+            ps.setArray(1, idArray);
+            ps.setArray(2, quantityArray);
+        }, STOCK_CHANGE);
+
+        if (changed.size() != quantities.size()) {
+            Set<Long> reserved = changed.stream().map(StockChange::id).collect(Collectors.toSet());
+            List<Long> failed = new ArrayList<>();
+            for (Long id : quantities.keySet()) {
+                if (!reserved.contains(id)) {
+                    failed.add(id);
+                }
+            }
+            // Unchecked exception, so the rows already decremented are rolled back
+            throw new InsufficientStockException(
+                    "Brak wystarczającej ilości lub nieistniejące produkty o ID " + failed);
+        }
+        evict(changed);
+        return changed.stream()
+                .sorted(Comparator.comparing(StockChange::id))
+                .map(StockChange::toResponse)
+                .collect(Collectors.toList());
+    }
+
+    private RuntimeException missingOrInsufficient(Long id) {
+        if (!productRepository.existsById(id)) {
+            return new ProductNotFoundException("Produkt o ID " + id + " nie został znaleziony");
+        }
+        return new InsufficientStockException("Brak wystarczającej ilości produktu o ID " + id);
+    }
+
+    private void evict(List<StockChange> changed) {
+        Cache byId = cacheManager.getCache(CacheConfiguration.PRODUCTS);
+        Cache byCategory = cacheManager.getCache(CacheConfiguration.PRODUCTS_BY_CATEGORY);
+        for (StockChange change : changed) {
+            if (byId != null) {
+                byId.evict(change.id());
+            }
+            if (byCategory != null) {
+                byCategory.evict(change.category());
+            }
+        }
+        eventPublisher.publishEvent(new ProductStockChangedEvent(
+                changed.stream().map(StockChange::id).toList()));
+    }
+
+    private static final RowMapper<StockChange> STOCK_CHANGE = (rs, rowNum) -> new StockChange(
+            rs.getLong("id"),
+            rs.getInt("stock_quantity"),
+            ProductCategory.valueOf(rs.getString("category")));
+
+    private record StockChange(Long id, int stockQuantity, ProductCategory category) {
+        StockResponse toResponse() {
+            return new StockResponse(id, stockQuantity);
+        }
+    }
+}
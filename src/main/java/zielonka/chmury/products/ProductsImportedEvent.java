@@ -0,0 +1,10 @@
+package zielonka.chmury.products;
+
+import java.util.List;
+
+/**
+ * Published once per committed import chunk instead of one {@link ProductChangedEvent} per row,
+ * so in-memory indexes can apply a whole batch in a single pass.
+ */
+public record ProductsImportedEvent(List<ProductChangedEvent> changes) {
+}
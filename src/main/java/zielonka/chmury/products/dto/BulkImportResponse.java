@@ -0,0 +1,41 @@
+package zielonka.chmury.products.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "Result of a bulk product import")
+public class BulkImportResponse {
+
+    @Schema(description = "Number of rows received", example = "1000")
+    private int received;
+
+    @Schema(description = "Number of products created", example = "998")
+    private int imported;
+
+    @Schema(description = "Rows that were rejected, the rest of the import is unaffected")
+    private List<RowError> errors = new ArrayList<>();
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Schema(description = "Rejected import row")
+    public static class RowError {
+
+        @Schema(description = "1-based row number in the request (data rows only for CSV)", example = "17")
+        private int row;
+
+        @Schema(description = "Product name of the row, if present", example = "Grilled Chicken")
+        private String name;
+
+        @Schema(description = "Why the row was rejected", example = "Product with this name already exists")
+        private String message;
+    }
+}
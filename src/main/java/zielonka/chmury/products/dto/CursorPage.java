@@ -0,0 +1,24 @@
+package zielonka.chmury.products.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "One page of results with an opaque cursor pointing at the next page")
+public class CursorPage<T> {
+
+    @Schema(description = "Items on this page")
+    private List<T> items;
+
+    @Schema(
+            description = "Cursor to pass as ?cursor= to fetch the next page, absent on the last page",
+            example = "aWQ6YXNjOjUwOg"
+    )
+    private String nextCursor;
+}
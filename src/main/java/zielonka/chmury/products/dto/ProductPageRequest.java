@@ -0,0 +1,40 @@
+package zielonka.chmury.products.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import lombok.Data;
+
+@Data
+@Schema(description = "Cursor (keyset) pagination parameters")
+public class ProductPageRequest {
+    public static final int DEFAULT_SIZE = 50;
+    public static final String DEFAULT_SORT = "id";
+    public static final String DEFAULT_DIRECTION = "asc";
+
+    @Min(value = 1, message = "Page size must be at least 1")
+    @Max(value = 500, message = "Page size can be at most 500")
+    @Schema(description = "Number of products per page", example = "50", minimum = "1", maximum = "500")
+    private int size = DEFAULT_SIZE;
+
+    @Schema(
+            description = "Sort key; defaults to id, or to price for price-range queries",
+            example = "id",
+            allowableValues = {"id", "name", "price"}
+    )
+    private String sort;
+
+    @Schema(description = "Sort direction", example = "asc", allowableValues = {"asc", "desc"})
+    private String direction = DEFAULT_DIRECTION;
+
+    @Schema(description = "Opaque cursor returned as nextCursor by the previous page; omit for the first page")
+    private String cursor;
+
+    /** First page in the default order, the only shape worth caching. */
+    public boolean isFirstDefaultPage() {
+        return cursor == null
+                && size == DEFAULT_SIZE
+                && (sort == null || DEFAULT_SORT.equalsIgnoreCase(sort))
+                && DEFAULT_DIRECTION.equalsIgnoreCase(direction);
+    }
+}
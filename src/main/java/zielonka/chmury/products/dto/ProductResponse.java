@@ -1,13 +1,17 @@
 package zielonka.chmury.products.dto;
 
 import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 import zielonka.chmury.products.ProductCategory;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 @Data
+@NoArgsConstructor
+@AllArgsConstructor
 @Schema(description = "Product data")
 public class ProductResponse {
 
@@ -64,4 +68,11 @@ public class ProductResponse {
             accessMode = Schema.AccessMode.READ_ONLY
     )
     private LocalDateTime updatedAt;
+
+    @Schema(
+            description = "Version of the product, also sent as a weak ETag",
+            example = "3",
+            accessMode = Schema.AccessMode.READ_ONLY
+    )
+    private Long version;
 }
\ No newline at end of file
@@ -0,0 +1,36 @@
+package zielonka.chmury.products.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Schema(description = "Basket reservation, applied to all items or none")
+public class ReservationRequest {
+
+    @NotEmpty(message = "At least one item is required")
+    @Size(max = 500, message = "A reservation can contain up to 500 items")
+    @Valid
+    @Schema(description = "Items to reserve", requiredMode = Schema.RequiredMode.REQUIRED)
+    private List<Item> items;
+
+    @Data
+    @Schema(description = "Single basket item")
+    public static class Item {
+
+        @NotNull(message = "Product ID is required")
+        @Schema(description = "Product ID", example = "1", requiredMode = Schema.RequiredMode.REQUIRED)
+        private Long productId;
+
+        @NotNull(message = "Quantity is required")
+        @Min(value = 1, message = "Quantity must be at least 1")
+        @Schema(description = "Number of units", example = "2", requiredMode = Schema.RequiredMode.REQUIRED, minimum = "1")
+        private Integer quantity;
+    }
+}
@@ -0,0 +1,21 @@
+package zielonka.chmury.products.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+
+@Data
+@Schema(description = "Stock reservation or release for a single product")
+public class StockRequest {
+
+    @NotNull(message = "Quantity is required")
+    @Min(value = 1, message = "Quantity must be at least 1")
+    @Schema(
+            description = "Number of units",
+            example = "2",
+            requiredMode = Schema.RequiredMode.REQUIRED,
+            minimum = "1"
+    )
+    private Integer quantity;
+}
@@ -0,0 +1,19 @@
+package zielonka.chmury.products.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "Stock level after a reservation or release")
+public class StockResponse {
+
+    @Schema(description = "Product ID", example = "1")
+    private Long productId;
+
+    @Schema(description = "Available quantity after the operation", example = "148")
+    private Integer stockQuantity;
+}
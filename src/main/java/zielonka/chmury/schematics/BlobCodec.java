@@ -0,0 +1,53 @@
+package zielonka.chmury.schematics;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Encoding of a stored blob. A compressed blob is kept next to where the raw one would be, with the
+ * codec's suffix, and its bytes are a valid body for the matching {@code Content-Encoding}.
+ */
+public enum BlobCodec {
+    NONE(null, ""),
+    GZIP("gzip", ".gz");
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String contentEncoding;
+    private final String suffix;
+
+    BlobCodec(String contentEncoding, String suffix) {
+        this.contentEncoding = contentEncoding;
+        this.suffix = suffix;
+    }
+
+    /** {@code Content-Encoding} token of the stored bytes, {@code null} for {@link #NONE}. */
+    public String contentEncoding() {
+        return contentEncoding;
+    }
+
+    String suffix() {
+        return suffix;
+    }
+
+    OutputStream compress(OutputStream out, int level) throws IOException {
+        return switch (this) {
+            case NONE -> out;
+            case GZIP -> new GZIPOutputStream(out, BUFFER_SIZE) {
+                {
+                    def.setLevel(level);
+                }
+            };
+        };
+    }
+
+    InputStream decompress(InputStream in) throws IOException {
+        return switch (this) {
+            case NONE -> in;
+            case GZIP -> new GZIPInputStream(in, BUFFER_SIZE);
+        };
+    }
+}
@@ -0,0 +1,28 @@
+package zielonka.chmury.schematics;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.Instant;
+
+/**
+ * Number of file rows referencing a stored blob. Mapped so the schema is generated with the rest;
+ * rows are only changed through the statements in {@link BlobReferences} and {@link BlobSweeper}.
+ */
+@Entity
+@Table(name = "blob_refs", indexes = @Index(name = "blob_refs_unreferenced_idx", columnList = "unreferenced_at"))
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class BlobReferenceEntity {
+    @Id
+    @Column(length = 64)
+    private String hash;
+
+    @Column(nullable = false)
+    private long refCount;
+
+    // Set when the count drops to zero; the blob may be reclaimed once the grace period has passed
+    private Instant unreferencedAt;
+}
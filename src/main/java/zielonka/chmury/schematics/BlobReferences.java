@@ -0,0 +1,69 @@
+package zielonka.chmury.schematics;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Reference counts of stored blobs, kept in {@code blob_refs} in the same transaction as the file
+ * rows they count. Unreferenced blobs are reclaimed by {@link BlobSweeper}.
+ */
+@Component
+public class BlobReferences {
+
+    // New blobs start unreferenced, so content whose attach never happens is reclaimed as well.
+    // Re-registering an unreferenced blob restarts its grace period.
+    private static final String REGISTER_SQL = """
+            INSERT INTO blob_refs (hash, ref_count, unreferenced_at) VALUES (?, 0, now())
+            ON CONFLICT (hash) DO UPDATE SET unreferenced_at = now() WHERE blob_refs.ref_count = 0""";
+
+    private static final String INCREMENT_SQL = """
+            INSERT INTO blob_refs (hash, ref_count) VALUES (?, 1)
+            ON CONFLICT (hash) DO UPDATE SET ref_count = blob_refs.ref_count + 1, unreferenced_at = NULL""";
+
+    private static final String DECREMENT_SQL = """
+            UPDATE blob_refs
+               SET ref_count = ref_count - 1,
+                   unreferenced_at = CASE WHEN ref_count = 1 THEN now() ELSE unreferenced_at END
+             WHERE hash = ? AND ref_count > 0""";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public BlobReferences(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Records blobs that were just stored, before they are attached. Runs in its own statement,
+     * outside the attach transaction.
+     */
+    public void register(Collection<String> hashes) {
+        batch(REGISTER_SQL, hashes);
+    }
+
+    /** Counts one new file row per hash. Must run in the transaction inserting the rows. */
+    public void increment(Collection<String> hashes) {
+        batch(INCREMENT_SQL, hashes);
+    }
+
+    /** Counts one removed file row per hash. Must run in the transaction deleting the rows. */
+    public void decrement(Collection<String> hashes) {
+        batch(DECREMENT_SQL, hashes);
+    }
+
+    private void batch(String sql, Collection<String> hashes) {
+        if (hashes.isEmpty()) {
+            return;
+        }
+        // Sorted so concurrent transactions lock the rows in the same order
+        List<Object[]> args = new ArrayList<>(hashes.size());
+        for (String hash : new TreeSet<>(hashes)) {
+            args.add(new Object[]{hash});
+        }
+        jdbcTemplate.batchUpdate(sql, args);
+    }
+}
@@ -0,0 +1,220 @@
+package zielonka.chmury.schematics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.regex.Pattern;
+
+/**
+ * Content-addressed file storage. Blobs are stored under their SHA-256 hash using a
+ * two-level sharded layout ({@code ab/cd/abcd...}) so no single directory grows unbounded.
+ * Blobs of at least {@code schematics.storage.compression-threshold} bytes are stored compressed
+ * with the configured {@link BlobCodec} when that makes them smaller; the hash always identifies
+ * the original content.
+ */
+@Component
+@Slf4j
+public class BlobStore {
+
+    private static final Pattern SHA256_HEX = Pattern.compile("[0-9a-f]{64}");
+
+    private final Path root;
+    private final Path tmpDir;
+    private final BlobCodec codec;
+    private final int compressionLevel;
+    private final long compressionThreshold;
+    private final Counter uploadedBytes;
+    private final Counter storedBytes;
+
+    public BlobStore(@Value("${schematics.storage-dir:./data/files}") String storageDir,
+                     @Value("${schematics.storage.codec:none}") BlobCodec codec,
+                     @Value("${schematics.storage.compression-level:6}") int compressionLevel,
+                     @Value("${schematics.storage.compression-threshold:4KB}") DataSize compressionThreshold,
+                     MeterRegistry meterRegistry) throws IOException {
+        this.root = Paths.get(storageDir).toAbsolutePath().normalize();
+        this.tmpDir = root.resolve("tmp");
+        Files.createDirectories(tmpDir);
+        this.codec = codec;
+        this.compressionLevel = compressionLevel;
+        this.compressionThreshold = compressionThreshold.toBytes();
+        this.uploadedBytes = Counter.builder("schematics.upload.bytes")
+                .description("Bytes received for stored blobs, including duplicates")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.storedBytes = Counter.builder("schematics.storage.bytes")
+                .description("Bytes written for new blobs, after compression")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Streams the input to a temporary file while hashing it, then atomically renames it into place.
+     * The input is read exactly once. When a blob with the same hash already exists the temporary
+     * copy is discarded and the stored blob is left untouched.
+     */
+    public StoredBlob store(InputStream input) throws IOException {
+        Path tmp = Files.createTempFile(tmpDir, "upload-", ".part");
+        try {
+            MessageDigest digest = sha256();
+            long size;
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE);
+                 InputStream in = new DigestInputStream(input, digest)) {
+                OutputStream out = Channels.newOutputStream(channel);
+                size = in.transferTo(out);
+                channel.force(false);
+            }
+            uploadedBytes.increment(size);
+            return place(tmp, HexFormat.of().formatHex(digest.digest()), size);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Moves a file whose SHA-256 hash has already been computed into place. The file must be on the
+     * same file system as the store, e.g. under its storage directory. On success the file has been
+     * either moved or, when the blob already exists, deleted; on failure it is left where it was.
+     */
+    public StoredBlob storeHashed(Path file, String hash, long size) throws IOException {
+        uploadedBytes.increment(size);
+        StoredBlob blob = place(file, hash, size);
+        Files.deleteIfExists(file);
+        return blob;
+    }
+
+    private StoredBlob place(Path file, String hash, long size) throws IOException {
+        if (exists(hash)) {
+            log.debug("Blob {} already stored, skipping write", hash);
+            return new StoredBlob(hash, size, false);
+        }
+
+        Path raw = pathOf(hash);
+        Files.createDirectories(raw.getParent());
+        Path compressed = compress(file, size);
+        if (compressed == null) {
+            Files.move(file, raw, StandardCopyOption.ATOMIC_MOVE);
+            storedBytes.increment(size);
+            return new StoredBlob(hash, size, true);
+        }
+        try {
+            long compressedSize = Files.size(compressed);
+            Files.move(compressed, pathOf(hash, codec), StandardCopyOption.ATOMIC_MOVE);
+            storedBytes.increment(compressedSize);
+            log.debug("Blob {} stored compressed, {} -> {} bytes", hash, size, compressedSize);
+        } finally {
+            Files.deleteIfExists(compressed);
+        }
+        return new StoredBlob(hash, size, true);
+    }
+
+    /**
+     * Writes a compressed copy of the file to a temporary file, or returns {@code null} when the
+     * blob is below the threshold or does not get smaller.
+     */
+    private Path compress(Path file, long size) throws IOException {
+        if (codec == BlobCodec.NONE || size < compressionThreshold) {
+            return null;
+        }
+        Path tmp = Files.createTempFile(tmpDir, "compress-", ".part");
+        try {
+            try (InputStream in = Files.newInputStream(file);
+                 OutputStream out = codec.compress(Files.newOutputStream(tmp), compressionLevel)) {
+                in.transferTo(out);
+            }
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                channel.force(false);
+            }
+            if (Files.size(tmp) < size) {
+                return tmp;
+            }
+        } catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists(tmp);
+            throw ex;
+        }
+        Files.deleteIfExists(tmp);
+        return null;
+    }
+
+    /**
+     * Deletes the blob in every encoding it may be stored in.
+     *
+     * @return number of bytes freed, {@code 0} if it was not stored
+     */
+    public long delete(String hash) throws IOException {
+        long freed = 0;
+        for (BlobCodec candidate : BlobCodec.values()) {
+            Path path = pathOf(hash, candidate);
+            try {
+                long size = Files.size(path);
+                Files.delete(path);
+                freed += size;
+            } catch (NoSuchFileException ex) {
+                // Already gone, e.g. deleted by a sweep that crashed before committing
+            }
+        }
+        return freed;
+    }
+
+    public boolean exists(String hash) {
+        return find(hash) != null;
+    }
+
+    /**
+     * Locates the stored blob in whichever encoding it was written with, independent of the codec
+     * configured now.
+     *
+     * @return the blob, or {@code null} if it is not stored
+     */
+    public Blob find(String hash) {
+        for (BlobCodec candidate : BlobCodec.values()) {
+            Path path = pathOf(hash, candidate);
+            if (Files.exists(path)) {
+                return new Blob(path, candidate);
+            }
+        }
+        return null;
+    }
+
+    private Path pathOf(String hash, BlobCodec encoding) {
+        Path raw = pathOf(hash);
+        return encoding == BlobCodec.NONE ? raw : raw.resolveSibling(hash + encoding.suffix());
+    }
+
+    public Path pathOf(String hash) {
+        if (hash == null || !SHA256_HEX.matcher(hash).matches()) {
+            throw new IllegalArgumentException("Invalid content hash: " + hash);
+        }
+        return root.resolve(hash.substring(0, 2))
+                .resolve(hash.substring(2, 4))
+                .resolve(hash);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    public record StoredBlob(String hash, long size, boolean created) {
+    }
+
+    /** Location of a stored blob and the encoding of its bytes. */
+    public record Blob(Path path, BlobCodec codec) {
+    }
+}
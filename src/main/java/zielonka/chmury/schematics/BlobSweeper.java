@@ -0,0 +1,138 @@
+package zielonka.chmury.schematics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reclaims blobs no file references any more. Candidates have had a zero count for longer than the
+ * grace period; each batch locks its rows with {@code SKIP LOCKED}, so several instances can sweep
+ * at once and attaches of the same content wait for the batch instead of racing it.
+ * <p>
+ * Files are deleted before the batch commits. A crash in between leaves the rows in place and the
+ * next run deletes them, the file deletes being idempotent. The JVM cannot lower its I/O priority,
+ * so batches are small and separated by a pause instead.
+ */
+@Component
+@Slf4j
+public class BlobSweeper {
+
+    private static final String CANDIDATES_SQL = """
+            SELECT r.hash, EXISTS (SELECT 1 FROM files f WHERE f.hash = r.hash) AS referenced
+              FROM blob_refs r
+             WHERE r.ref_count = 0 AND r.unreferenced_at < ?
+             ORDER BY r.unreferenced_at
+             LIMIT ?
+               FOR UPDATE OF r SKIP LOCKED""";
+
+    // Counts that drifted, e.g. rows written before reference counting existed, are recomputed
+    private static final String RECOUNT_SQL = """
+            UPDATE blob_refs
+               SET ref_count = (SELECT count(*) FROM files f WHERE f.hash = blob_refs.hash), unreferenced_at = NULL
+             WHERE hash = ?""";
+
+    private static final String DELETE_SQL = "DELETE FROM blob_refs WHERE hash = ?";
+
+    private static final String POSTPONE_SQL = "UPDATE blob_refs SET unreferenced_at = now() WHERE hash = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final BlobStore blobStore;
+    private final Counter reclaimedBytes;
+    private final Counter reclaimedBlobs;
+
+    @Value("${schematics.gc.grace-period}")
+    private Duration gracePeriod;
+    @Value("${schematics.gc.batch-size}")
+    private int batchSize;
+    @Value("${schematics.gc.batch-delay}")
+    private Duration batchDelay;
+
+    public BlobSweeper(JdbcTemplate jdbcTemplate,
+                       PlatformTransactionManager transactionManager,
+                       BlobStore blobStore,
+                       MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.blobStore = blobStore;
+        this.reclaimedBytes = Counter.builder("schematics.gc.reclaimed.bytes")
+                .description("Disk space freed by deleting unreferenced blobs")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.reclaimedBlobs = Counter.builder("schematics.gc.reclaimed.blobs")
+                .description("Unreferenced blobs deleted")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${schematics.gc.interval}", initialDelayString = "${schematics.gc.interval}")
+    public void sweep() {
+        long blobs = 0;
+        long bytes = 0;
+        try {
+            while (true) {
+                Batch batch = transactionTemplate.execute(status -> sweepBatch());
+                blobs += batch.blobs();
+                bytes += batch.bytes();
+                reclaimedBlobs.increment(batch.blobs());
+                reclaimedBytes.increment(batch.bytes());
+                if (batch.candidates() < batchSize) {
+                    break;
+                }
+                Thread.sleep(batchDelay.toMillis());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException ex) {
+            log.warn("Blob sweep failed, retrying on next run", ex);
+        }
+        if (blobs > 0) {
+            log.info("Reclaimed {} unreferenced blobs, {} bytes", blobs, bytes);
+        }
+    }
+
+    private Batch sweepBatch() {
+        Timestamp cutoff = Timestamp.from(Instant.now().minus(gracePeriod));
+        List<String> unreferenced = new ArrayList<>();
+        List<String> referenced = new ArrayList<>();
+        jdbcTemplate.query(CANDIDATES_SQL, rs -> {
+            (rs.getBoolean("referenced") ? referenced : unreferenced).add(rs.getString("hash"));
+        }, cutoff, batchSize);
+
+        for (String hash : referenced) {
+            log.warn("Blob {} has a zero reference count but is still attached, recounting", hash);
+            jdbcTemplate.update(RECOUNT_SQL, hash);
+        }
+        long bytes = 0;
+        List<Object[]> deleted = new ArrayList<>(unreferenced.size());
+        for (String hash : unreferenced) {
+            try {
+                bytes += blobStore.delete(hash);
+                deleted.add(new Object[]{hash});
+            } catch (IOException ex) {
+                // Retried after another grace period, so one bad file does not stall every sweep
+                log.warn("Failed to delete blob {}", hash, ex);
+                jdbcTemplate.update(POSTPONE_SQL, hash);
+            }
+        }
+        if (!deleted.isEmpty()) {
+            jdbcTemplate.batchUpdate(DELETE_SQL, deleted);
+        }
+        return new Batch(referenced.size() + unreferenced.size(), deleted.size(), bytes);
+    }
+
+    private record Batch(int candidates, long blobs, long bytes) {
+    }
+}
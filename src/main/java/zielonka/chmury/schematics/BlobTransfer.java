@@ -0,0 +1,223 @@
+package zielonka.chmury.schematics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import zielonka.chmury.ContentCodings;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Writes stored blobs to the client. Uses Tomcat's sendfile support when the connector offers it
+ * and falls back to {@link FileChannel#transferTo} otherwise, so file bytes never pass through the heap.
+ * Blobs are immutable and addressed by their hash, which doubles as a strong ETag.
+ * <p>
+ * Compressed blobs are sent as stored, with {@code Content-Encoding}, to clients that accept the
+ * encoding; only other clients get them decompressed on the fly. The two representations have
+ * different ETags and byte ranges refer to the representation being sent.
+ */
+@Component
+public class BlobTransfer {
+
+    private static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String CACHE_CONTROL = CacheControl.maxAge(Duration.ofDays(365))
+            .cachePrivate()
+            .immutable()
+            .getHeaderValue();
+
+    private final Counter downloadedBytes;
+
+    public BlobTransfer(MeterRegistry meterRegistry) {
+        this.downloadedBytes = Counter.builder("schematics.download.bytes")
+                .description("Blob bytes sent to clients")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Writes the blob, or the requested part of it, to the response.
+     *
+     * @return {@code true} if the response carries the beginning of the blob, i.e. a new download
+     * rather than a revalidation or the continuation of a resumed one
+     */
+    public boolean send(BlobStore.Blob blob, long size, String hash, String fileName,
+                        HttpServletRequest request, HttpServletResponse response) throws IOException {
+        BlobCodec codec = blob.codec();
+        boolean decode = codec != BlobCodec.NONE
+                && !ContentCodings.accepts(request.getHeader(HttpHeaders.ACCEPT_ENCODING), codec.contentEncoding());
+        long length = decode ? size : Files.size(blob.path());
+        String etag = codec == BlobCodec.NONE || decode
+                ? "\"" + hash + "\""
+                : "\"" + hash + "-" + codec.contentEncoding() + "\"";
+
+        if (codec != BlobCodec.NONE) {
+            response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            if (!decode) {
+                response.setHeader(HttpHeaders.CONTENT_ENCODING, codec.contentEncoding());
+            }
+        }
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CACHE_CONTROL);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        if (matchesAny(request.getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return false;
+        }
+
+        long start = 0;
+        long end = length - 1;
+        HttpRange range = requestedRange(request, etag);
+        if (range != null) {
+            if (length == 0 || !isSatisfiable(range, length)) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return false;
+            }
+            start = range.getRangeStart(length);
+            end = range.getRangeEnd(length);
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+        } else {
+            response.setStatus(HttpServletResponse.SC_OK);
+        }
+
+        long count = end - start + 1;
+        response.setContentType(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+        response.setContentLengthLong(count);
+        if (fileName != null) {
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                    .filename(fileName, StandardCharsets.UTF_8)
+                    .build()
+                    .toString());
+        }
+
+        if ("HEAD".equals(request.getMethod())) {
+            return false;
+        }
+        if (count == 0) {
+            return true;
+        }
+        if (decode) {
+            sendDecoded(blob, start, count, response);
+            return start == 0;
+        }
+
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+            // Tomcat streams the file with sendfile(2) once the handler returns
+            request.setAttribute(SENDFILE_FILENAME, blob.path().toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end + 1);
+            downloadedBytes.increment(count);
+            return start == 0;
+        }
+
+        long position = start;
+        long remaining = count;
+        try (FileChannel channel = FileChannel.open(blob.path(), StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            while (remaining > 0) {
+                long written = channel.transferTo(position, remaining, out);
+                if (written <= 0) {
+                    break;
+                }
+                position += written;
+                remaining -= written;
+            }
+        } finally {
+            downloadedBytes.increment(count - remaining);
+        }
+        return start == 0;
+    }
+
+    /**
+     * Streams {@code count} bytes of the decompressed blob starting at {@code start}. Ranges are
+     * served by decompressing and skipping the preceding bytes.
+     */
+    private void sendDecoded(BlobStore.Blob blob, long start, long count,
+                             HttpServletResponse response) throws IOException {
+        long remaining = count;
+        try (InputStream in = blob.codec().decompress(Files.newInputStream(blob.path()))) {
+            in.skipNBytes(start);
+            OutputStream out = response.getOutputStream();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (remaining > 0) {
+                int n = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (n < 0) {
+                    throw new EOFException("Blob is shorter than its recorded size");
+                }
+                out.write(buffer, 0, n);
+                remaining -= n;
+            }
+        } finally {
+            downloadedBytes.increment(count - remaining);
+        }
+    }
+
+    /**
+     * Returns the single byte range to serve, or {@code null} for a full response. Multi-range
+     * requests and ranges guarded by a stale {@code If-Range} are answered with the whole blob.
+     */
+    private HttpRange requestedRange(HttpServletRequest request, String etag) {
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader == null) {
+            return null;
+        }
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange != null && !ifRange.trim().equals(etag)) {
+            return null;
+        }
+        try {
+            List<HttpRange> ranges = HttpRange.parseRanges(rangeHeader);
+            return ranges.size() == 1 ? ranges.get(0) : null;
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+    private static boolean isSatisfiable(HttpRange range, long length) {
+        try {
+            return range.getRangeStart(length) < length;
+        } catch (IllegalArgumentException ex) {
+            return false;
+        }
+    }
+
+    private static boolean matchesAny(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*") || tag.equals(etag) || tag.equals("W/" + etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,90 @@
+package zielonka.chmury.schematics;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts file downloads in memory and writes them to the {@code files} table in periodic batches,
+ * so hot files do not take a row lock per download. Pending increments are flushed on shutdown.
+ * Files not downloaded since the previous flush are dropped from the map, so it only holds recently
+ * downloaded files.
+ */
+@Component
+@Slf4j
+public class DownloadCounter {
+
+    private static final String FLUSH_SQL = "UPDATE files SET download = download + ? WHERE id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ConcurrentHashMap<Long, LongAdder> pending = new ConcurrentHashMap<>();
+
+    public DownloadCounter(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public void increment(long fileId) {
+        LongAdder adder = pending.computeIfAbsent(fileId, id -> new LongAdder());
+        adder.increment();
+        if (pending.get(fileId) != adder) {
+            // A flush dropped the adder as idle meanwhile; move the count to the current one
+            add(fileId, adder.sumThenReset());
+        }
+    }
+
+    /** Downloads counted since the last flush, not yet visible in the database. */
+    public long pending(long fileId) {
+        LongAdder adder = pending.get(fileId);
+        return adder == null ? 0 : adder.sum();
+    }
+
+    @Scheduled(fixedDelayString = "${schematics.downloads.flush-interval:10s}")
+    public void flush() {
+        // Sorted so concurrent flushes from several instances lock rows in the same order
+        Map<Long, Long> deltas = new TreeMap<>();
+        pending.forEach((id, adder) -> {
+            long delta = adder.sumThenReset();
+            if (delta == 0 && pending.remove(id, adder)) {
+                // An increment racing the removal is picked up either here or by increment()
+                delta = adder.sumThenReset();
+            }
+            if (delta != 0) {
+                deltas.put(id, delta);
+            }
+        });
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        List<Object[]> batch = new ArrayList<>(deltas.size());
+        deltas.forEach((id, delta) -> batch.add(new Object[]{delta, id}));
+        try {
+            jdbcTemplate.batchUpdate(FLUSH_SQL, batch);
+            log.debug("Flushed download counters for {} files", deltas.size());
+        } catch (DataAccessException ex) {
+            log.warn("Failed to flush download counters, retrying on next run", ex);
+            deltas.forEach(this::add);
+        }
+    }
+
+    private void add(long fileId, long delta) {
+        if (delta != 0) {
+            pending.computeIfAbsent(fileId, id -> new LongAdder()).add(delta);
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+}
@@ -0,0 +1,7 @@
+package zielonka.chmury.schematics;
+
+/**
+ * Scalar columns of an attached file together with the ID of its schematic.
+ */
+public record FileSummary(long id, long schematicId, String hash, String name, long download, long fileSize) {
+}
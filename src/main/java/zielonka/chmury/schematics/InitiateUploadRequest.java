@@ -0,0 +1,22 @@
+package zielonka.chmury.schematics;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.Size;
+import lombok.*;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class InitiateUploadRequest {
+    @NotBlank
+    @Size(max = 255)
+    private String fileName;
+
+    @NotNull
+    @Positive
+    private Long size;
+}
@@ -0,0 +1,9 @@
+package zielonka.chmury.schematics;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class InvalidUploadException extends RuntimeException {
+    public InvalidUploadException(String msg) { super(msg); }
+}
@@ -7,7 +7,10 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "files")
+// The same content may be attached to many schematics, but only once to each
+@Table(name = "files",
+        uniqueConstraints = @UniqueConstraint(columnNames = {"schematic_id", "hash"}),
+        indexes = @Index(name = "files_hash_idx", columnList = "hash"))
 @Getter
 @Setter
 @NoArgsConstructor
@@ -15,11 +18,17 @@ import java.util.List;
 @Builder
 public class PostFileEntity {
     @Id
+    // Pooled sequence, so the files of one upload are inserted in JDBC batches
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "files_seq")
+    @SequenceGenerator(name = "files_seq", sequenceName = "files_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(nullable = false, length = 64)
     private String hash;
 
     private String name;
-    private int download;
-    private int fileSize;
+    private long download;
+    private long fileSize;
 
     // Many files belong to one schematic post
     @ManyToOne(fetch = FetchType.LAZY)
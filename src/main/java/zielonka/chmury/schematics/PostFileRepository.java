@@ -1,7 +1,30 @@
 package zielonka.chmury.schematics;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
-public interface PostFileRepository extends JpaRepository<PostFileEntity, String> {
-    // hash is the id (String)
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+public interface PostFileRepository extends JpaRepository<PostFileEntity, Long> {
+
+    @Query("SELECT f FROM PostFileEntity f WHERE f.schematic.id = :schematicId AND f.hash = :hash")
+    Optional<PostFileEntity> findBySchematicIdAndHash(@Param("schematicId") long schematicId, @Param("hash") String hash);
+
+    @Query("SELECT f.hash FROM PostFileEntity f WHERE f.schematic.id = :schematicId AND f.hash IN :hashes")
+    Set<String> findAttachedHashes(@Param("schematicId") long schematicId, @Param("hashes") Collection<String> hashes);
+
+    @Query("SELECT f.hash FROM PostFileEntity f WHERE f.schematic.id = :schematicId")
+    List<String> findHashesBySchematicId(@Param("schematicId") long schematicId);
+
+    /** Hash and size of every given hash that is attached to at least one schematic. */
+    @Query("SELECT f.hash, MAX(f.fileSize) FROM PostFileEntity f WHERE f.hash IN :hashes GROUP BY f.hash")
+    List<Object[]> findKnownSizes(@Param("hashes") Collection<String> hashes);
+
+    @Query("SELECT new zielonka.chmury.schematics.FileSummary(f.id, f.schematic.id, f.hash, f.name, f.download, f.fileSize) "
+            + "FROM PostFileEntity f WHERE f.schematic.id IN :schematicIds")
+    List<FileSummary> findSummariesBySchematicIds(@Param("schematicIds") Collection<Long> schematicIds);
 }
@@ -0,0 +1,44 @@
+package zielonka.chmury.schematics;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.PositiveOrZero;
+import jakarta.validation.constraints.Size;
+import lombok.*;
+
+import java.util.List;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class PreflightRequest {
+    @NotEmpty
+    @Size(max = 1000)
+    @Valid
+    private List<Item> files;
+
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Builder
+    public static class Item {
+        // Lowercase hex SHA-256 of the content
+        @NotNull
+        @Pattern(regexp = "[0-9a-f]{64}")
+        private String hash;
+
+        @NotNull
+        @PositiveOrZero
+        private Long size;
+
+        @NotBlank
+        @Size(max = 255)
+        private String name;
+    }
+}
@@ -0,0 +1,17 @@
+package zielonka.chmury.schematics;
+
+import lombok.*;
+
+import java.util.List;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class PreflightResponse {
+    // Files attached without an upload, in request order
+    private List<CreateFileResponse> attached;
+    // Hashes the server does not have; upload these as usual
+    private List<String> missing;
+}
@@ -7,17 +7,25 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.*;
 import org.springframework.data.mapping.PropertyReferenceException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import zielonka.chmury.ETags;
 
 import java.io.IOException;
+import java.net.URI;
+import java.util.List;
 
 @RestController
 @RequestMapping("/api/v1/schematics")
@@ -27,11 +35,12 @@ import java.io.IOException;
 public class SchematicController {
 
     private final SchematicService schematicService;
+    private final BlobTransfer blobTransfer;
 
     @GetMapping
     @Operation(
             summary = "Get all schematics (paginated)",
-            description = "Returns a paginated list of all schematics. Supports sorting and pagination using standard Spring parameters (?page, ?size, ?sort)."
+            description = "Returns a paginated list of all schematics. Supports sorting and pagination using standard Spring parameters (?page, ?size, ?sort). With ?totals=false the total element and page counts are omitted, which skips the count query."
     )
     @ApiResponses({
             @ApiResponse(
@@ -48,30 +57,31 @@ public class SchematicController {
                     content = @Content
             )
     })
-    public ResponseEntity<Page<SchematicResponse>> listSchematics(
+    public ResponseEntity<Slice<SchematicResponse>> listSchematics(
             @Parameter(description = "Pagination and sorting parameters")
-            Pageable pageable
+            Pageable pageable,
+            @Parameter(description = "Whether to compute total element and page counts")
+            @RequestParam(defaultValue = "true") boolean totals
     ) {
-        log.info("GET /api/v1/schematics?page={}&size={}&sort={}",
-                pageable.getPageNumber(), pageable.getPageSize(), pageable.getSort());
-
-        Page<SchematicPostEntity> entPage;
+        Slice<SchematicResponse> dtoPage;
         try {
-            entPage = schematicService.listAll(pageable);
+            dtoPage = list(pageable, totals);
         } catch (PropertyReferenceException ex) {
             log.warn("Invalid sort property detected: {}", ex.getPropertyName());
             Pageable fallback = PageRequest.of(pageable.getPageNumber(), pageable.getPageSize());
-            entPage = schematicService.listAll(fallback);
+            dtoPage = list(fallback, totals);
         }
-
-        Page<SchematicResponse> dtoPage = entPage.map(this::toDto);
         return ResponseEntity.ok(dtoPage);
     }
 
+    private Slice<SchematicResponse> list(Pageable pageable, boolean totals) {
+        return totals ? schematicService.listAll(pageable) : schematicService.listSlice(pageable);
+    }
+
     @GetMapping("/{id}")
     @Operation(
             summary = "Get schematic by ID",
-            description = "Returns schematic details for the given ID"
+            description = "Returns schematic details for the given ID with a weak ETag derived from its version. Attaching or removing files changes the version; download counts do not."
     )
     @ApiResponses({
             @ApiResponse(
@@ -82,6 +92,11 @@ public class SchematicController {
                             schema = @Schema(implementation = SchematicResponse.class)
                     )
             ),
+            @ApiResponse(
+                    responseCode = "304",
+                    description = "Schematic not modified since the given ETag",
+                    content = @Content
+            ),
             @ApiResponse(
                     responseCode = "404",
                     description = "Schematic not found",
@@ -90,11 +105,15 @@ public class SchematicController {
     })
     public ResponseEntity<SchematicResponse> getSchematicById(
             @Parameter(description = "ID of the schematic to retrieve", required = true)
-            @PathVariable Long id
+            @PathVariable Long id,
+            WebRequest webRequest
     ) {
-        log.info("GET /api/v1/schematics/{} - Retrieving schematic", id);
-        SchematicPostEntity entity = schematicService.getById(id);
-        return ResponseEntity.ok(toDto(entity));
+        SchematicResponse schematic = schematicService.getById(id);
+        String etag = ETags.weak(schematic.getVersion());
+        if (webRequest.checkNotModified(etag)) {
+            return null;
+        }
+        return ResponseEntity.ok().eTag(etag).body(schematic);
     }
 
     @PostMapping
@@ -121,7 +140,6 @@ public class SchematicController {
             @Parameter(description = "New schematic data", required = true)
             @RequestBody CreateSchematicRequest request
     ) {
-        log.info("POST /api/v1/schematics - Creating new schematic");
         SchematicPostEntity created = schematicService.create(request);
         return ResponseEntity.status(HttpStatus.CREATED).body(toDto(created));
     }
@@ -149,17 +167,23 @@ public class SchematicController {
                     responseCode = "400",
                     description = "Invalid input data",
                     content = @Content
+            ),
+            @ApiResponse(
+                    responseCode = "412",
+                    description = "Schematic was modified since the version given in If-Match",
+                    content = @Content
             )
     })
     public ResponseEntity<SchematicResponse> updateSchematic(
             @Parameter(description = "ID of the schematic to update", required = true)
             @PathVariable Long id,
             @Parameter(description = "Updated schematic data", required = true)
-            @RequestBody UpdateSchematicRequest request
+            @RequestBody UpdateSchematicRequest request,
+            @Parameter(description = "ETag of the version being updated")
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch
     ) {
-        log.info("PUT /api/v1/schematics/{} - Updating schematic", id);
-        SchematicPostEntity updated = schematicService.update(id, request);
-        return ResponseEntity.ok(toDto(updated));
+        SchematicPostEntity updated = schematicService.update(id, request, ifMatch);
+        return ResponseEntity.ok().eTag(ETags.weak(updated.getVersion())).body(toDto(updated));
     }
 
     @DeleteMapping("/{id}")
@@ -177,14 +201,20 @@ public class SchematicController {
                     responseCode = "404",
                     description = "Schematic not found",
                     content = @Content
+            ),
+            @ApiResponse(
+                    responseCode = "412",
+                    description = "Schematic was modified since the version given in If-Match",
+                    content = @Content
             )
     })
     public ResponseEntity<Void> deleteSchematic(
             @Parameter(description = "ID of the schematic to delete", required = true)
-            @PathVariable Long id
+            @PathVariable Long id,
+            @Parameter(description = "ETag of the version being deleted")
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch
     ) {
-        log.info("DELETE /api/v1/schematics/{} - Deleting schematic", id);
-        schematicService.delete(id);
+        schematicService.delete(id, ifMatch);
         return ResponseEntity.noContent().build();
     }
 
@@ -211,6 +241,11 @@ public class SchematicController {
                     responseCode = "400",
                     description = "Invalid file upload request",
                     content = @Content
+            ),
+            @ApiResponse(
+                    responseCode = "503",
+                    description = "Too many transfers in progress, retry after the number of seconds in Retry-After",
+                    content = @Content
             )
     })
     public ResponseEntity<CreateFileResponse> uploadSchematicFile(
@@ -219,11 +254,374 @@ public class SchematicController {
             @Parameter(description = "File to upload", required = true)
             @RequestPart("file") MultipartFile file
     ) throws IOException {
-        log.info("POST /api/v1/schematics/{}/files - Uploading file", id);
         CreateFileResponse response = schematicService.uploadFile(id, file);
         return ResponseEntity.status(HttpStatus.CREATED).body(response);
     }
 
+    @PostMapping(value = "/{id}/files/batch", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @Operation(
+            summary = "Upload many files for schematic",
+            description = "Uploads all parts named \"files\" and associates them with the schematic in one transaction. Either all files are attached or none."
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "201",
+                    description = "Files successfully uploaded, in request order",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = CreateFileResponse.class)
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "404",
+                    description = "Schematic not found",
+                    content = @Content
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "No files or too many files in the upload",
+                    content = @Content
+            ),
+            @ApiResponse(
+                    responseCode = "503",
+                    description = "Too many transfers in progress, retry after the number of seconds in Retry-After",
+                    content = @Content
+            )
+    })
+    public ResponseEntity<List<CreateFileResponse>> uploadSchematicFiles(
+            @Parameter(description = "Schematic ID", required = true)
+            @PathVariable Long id,
+            @Parameter(description = "Files to upload", required = true)
+            @RequestPart("files") List<MultipartFile> files
+    ) throws IOException {
+        List<CreateFileResponse> response = schematicService.uploadFiles(id, files);
+        return ResponseEntity.status(HttpStatus.CREATED).body(response);
+    }
+
+    @PostMapping(value = "/{id}/files/jobs", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @Operation(
+            summary = "Upload file for schematic asynchronously",
+            description = "Accepts the file and processes it in the background. Poll the returned job until it has succeeded or failed."
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "202",
+                    description = "File accepted for processing",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = UploadJobResponse.class)
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "404",
+                    description = "Schematic not found",
+                    content = @Content
+            ),
+            @ApiResponse(
+                    responseCode = "503",
+                    description = "Upload queue is full, retry after the number of seconds in Retry-After",
+                    content = @Content
+            )
+    })
+    public ResponseEntity<UploadJobResponse> submitSchematicFile(
+            @Parameter(description = "Schematic ID", required = true)
+            @PathVariable Long id,
+            @Parameter(description = "File to upload", required = true)
+            @RequestPart("file") MultipartFile file
+    ) throws IOException {
+        UploadJobResponse job = schematicService.submitUpload(id, file);
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/v1/schematics/" + id + "/files/jobs/" + job.getJobId()))
+                .body(job);
+    }
+
+    @GetMapping("/{id}/files/jobs/{jobId}")
+    @Operation(
+            summary = "Get upload job status",
+            description = "Returns the state of an asynchronous upload and, once it has succeeded, the stored file."
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Upload job found",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = UploadJobResponse.class)
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "404",
+                    description = "Upload job not found or expired",
+                    content = @Content
+            )
+    })
+    public ResponseEntity<UploadJobResponse> getUploadJob(
+            @Parameter(description = "Schematic ID", required = true)
+            @PathVariable Long id,
+            @Parameter(description = "Upload job ID", required = true)
+            @PathVariable String jobId
+    ) {
+        return ResponseEntity.ok(schematicService.getUploadJob(id, jobId));
+    }
+
+    @PostMapping(value = "/{id}/files/preflight", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(
+            summary = "Attach files by hash",
+            description = "Checks the given SHA-256 hashes and sizes against stored content. Files the server already has are attached to the schematic immediately, without uploading them; the response lists the hashes that still have to be uploaded."
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Known files attached, missing hashes listed",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = PreflightResponse.class)
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "No files, too many files or a malformed hash",
+                    content = @Content
+            ),
+            @ApiResponse(
+                    responseCode = "404",
+                    description = "Schematic not found",
+                    content = @Content
+            )
+    })
+    public ResponseEntity<PreflightResponse> preflightSchematicFiles(
+            @Parameter(description = "Schematic ID", required = true)
+            @PathVariable Long id,
+            @Valid @RequestBody PreflightRequest request
+    ) {
+        return ResponseEntity.ok(schematicService.preflight(id, request.getFiles()));
+    }
+
+    @PostMapping(value = "/{id}/uploads", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(
+            summary = "Start a resumable upload",
+            description = "Creates an upload session for one file of the declared size. Send the content with PUT /{id}/uploads/{uploadId}?offset=..., then finish with POST /{id}/uploads/{uploadId}/complete. Use this instead of multipart uploads for large files or unreliable connections."
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "201",
+                    description = "Upload session created",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = UploadStatusResponse.class)
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "Missing file name or invalid size",
+                    content = @Content
+            ),
+            @ApiResponse(
+                    responseCode = "404",
+                    description = "Schematic not found",
+                    content = @Content
+            )
+    })
+    public ResponseEntity<UploadStatusResponse> initiateUpload(
+            @Parameter(description = "Schematic ID", required = true)
+            @PathVariable Long id,
+            @Valid @RequestBody InitiateUploadRequest request
+    ) throws IOException {
+        UploadStatusResponse status = schematicService.initiateUpload(id, request);
+        return ResponseEntity.created(URI.create("/api/v1/schematics/" + id + "/uploads/" + status.getUploadId()))
+                .body(status);
+    }
+
+    @GetMapping("/{id}/uploads/{uploadId}")
+    @Operation(
+            summary = "Get upload progress",
+            description = "Returns the number of bytes received so far. After a failed chunk, resume from the returned offset."
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Upload session found",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = UploadStatusResponse.class)
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "404",
+                    description = "Upload session not found or expired",
+                    content = @Content
+            )
+    })
+    public ResponseEntity<UploadStatusResponse> getUpload(
+            @Parameter(description = "Schematic ID", required = true)
+            @PathVariable Long id,
+            @Parameter(description = "Upload session ID", required = true)
+            @PathVariable String uploadId
+    ) {
+        return ResponseEntity.ok(schematicService.getUpload(id, uploadId));
+    }
+
+    @PutMapping(value = "/{id}/uploads/{uploadId}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    @Operation(
+            summary = "Upload a chunk",
+            description = "Appends the raw request body at the given offset, which must equal the bytes received so far. Chunks can be of any size. If the connection drops, the bytes that arrived are kept."
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Chunk stored",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = UploadStatusResponse.class)
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "Chunk goes past the declared file size",
+                    content = @Content
+            ),
+            @ApiResponse(
+                    responseCode = "404",
+                    description = "Upload session not found or expired",
+                    content = @Content
+            ),
+            @ApiResponse(
+                    responseCode = "409",
+                    description = "Offset does not match the bytes received, or another chunk is in progress",
+                    content = @Content
+            )
+    })
+    public ResponseEntity<UploadStatusResponse> uploadChunk(
+            @Parameter(description = "Schematic ID", required = true)
+            @PathVariable Long id,
+            @Parameter(description = "Upload session ID", required = true)
+            @PathVariable String uploadId,
+            @Parameter(description = "Position of the first byte of this chunk", required = true)
+            @RequestParam long offset,
+            HttpServletRequest request
+    ) throws IOException {
+        return ResponseEntity.ok(schematicService.uploadChunk(id, uploadId, offset, request.getInputStream()));
+    }
+
+    @PostMapping("/{id}/uploads/{uploadId}/complete")
+    @Operation(
+            summary = "Complete a resumable upload",
+            description = "Stores the received file under its content hash and attaches it to the schematic. All declared bytes must have been received."
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "201",
+                    description = "File successfully uploaded",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = CreateFileResponse.class)
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "Not all bytes have been received",
+                    content = @Content
+            ),
+            @ApiResponse(
+                    responseCode = "404",
+                    description = "Schematic or upload session not found",
+                    content = @Content
+            ),
+            @ApiResponse(
+                    responseCode = "409",
+                    description = "A chunk of this upload is in progress",
+                    content = @Content
+            )
+    })
+    public ResponseEntity<CreateFileResponse> completeUpload(
+            @Parameter(description = "Schematic ID", required = true)
+            @PathVariable Long id,
+            @Parameter(description = "Upload session ID", required = true)
+            @PathVariable String uploadId
+    ) throws IOException {
+        CreateFileResponse response = schematicService.completeUpload(id, uploadId);
+        return ResponseEntity.status(HttpStatus.CREATED).body(response);
+    }
+
+    @DeleteMapping("/{id}/uploads/{uploadId}")
+    @Operation(
+            summary = "Abort a resumable upload",
+            description = "Discards the upload session and the bytes received so far"
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "204",
+                    description = "Upload session discarded",
+                    content = @Content
+            ),
+            @ApiResponse(
+                    responseCode = "404",
+                    description = "Upload session not found or expired",
+                    content = @Content
+            )
+    })
+    public ResponseEntity<Void> abortUpload(
+            @Parameter(description = "Schematic ID", required = true)
+            @PathVariable Long id,
+            @Parameter(description = "Upload session ID", required = true)
+            @PathVariable String uploadId
+    ) throws IOException {
+        schematicService.abortUpload(id, uploadId);
+        return ResponseEntity.noContent().build();
+    }
+
+    @GetMapping("/{id}/files/{fileHash}")
+    @Operation(
+            summary = "Download file of schematic",
+            description = "Streams the stored file. Supports single byte ranges (Range, If-Range) and conditional requests using the content hash as a strong ETag (If-None-Match). Files stored compressed are sent as is with Content-Encoding to clients that accept it, with a separate ETag, and decompressed for other clients."
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "File content",
+                    content = @Content(mediaType = "application/octet-stream")
+            ),
+            @ApiResponse(
+                    responseCode = "206",
+                    description = "Requested byte range of the file",
+                    content = @Content(mediaType = "application/octet-stream")
+            ),
+            @ApiResponse(
+                    responseCode = "304",
+                    description = "Client copy is up to date",
+                    content = @Content
+            ),
+            @ApiResponse(
+                    responseCode = "404",
+                    description = "Schematic or file not found",
+                    content = @Content
+            ),
+            @ApiResponse(
+                    responseCode = "416",
+                    description = "Requested range not satisfiable",
+                    content = @Content
+            ),
+            @ApiResponse(
+                    responseCode = "503",
+                    description = "Too many transfers in progress, retry after the number of seconds in Retry-After",
+                    content = @Content
+            )
+    })
+    public void downloadSchematicFile(
+            @Parameter(description = "Schematic ID", required = true)
+            @PathVariable Long id,
+            @Parameter(description = "File hash to download", required = true)
+            @PathVariable String fileHash,
+            HttpServletRequest request,
+            HttpServletResponse response
+    ) throws IOException {
+        PostFileEntity file = schematicService.getFile(id, fileHash);
+        if (blobTransfer.send(schematicService.blob(file), file.getFileSize(), file.getHash(), file.getName(),
+                request, response)) {
+            schematicService.recordDownload(file);
+        }
+    }
+
     @DeleteMapping("/{id}/files/{fileHash}")
     @Operation(
             summary = "Delete a file from schematic",
@@ -252,7 +650,6 @@ public class SchematicController {
             @Parameter(description = "File hash to delete", required = true)
             @PathVariable String fileHash
     ) {
-        log.info("DELETE /api/v1/schematics/{}/files/{} - Deleting file", id, fileHash);
         schematicService.deleteFile(id, fileHash);
         return ResponseEntity.noContent().build();
     }
@@ -263,6 +660,7 @@ public class SchematicController {
                 .name(entity.getName())
                 .description(entity.getDescription())
                 .owner(entity.getOwner())
+                .version(entity.getVersion())
                 .files(schematicService.filesToDto(entity.getFiles()))
                 .build();
     }
@@ -22,6 +22,11 @@ public class SchematicPostEntity {
     private String description;
     private long owner;
 
+    // Also bumped when files are attached or removed, so it covers the whole response
+    @Version
+    @Column(nullable = false, columnDefinition = "bigint default 0")
+    private long version;
+
     @OneToMany(
             mappedBy = "schematic",
             cascade = CascadeType.ALL,
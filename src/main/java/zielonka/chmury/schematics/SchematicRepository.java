@@ -1,9 +1,23 @@
 package zielonka.chmury.schematics;
 
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 
 import java.util.Optional;
 
 public interface SchematicRepository extends JpaRepository<SchematicPostEntity, Long> {
     Optional<SchematicPostEntity> findById(long id);
+
+    @EntityGraph(attributePaths = "files")
+    Optional<SchematicPostEntity> findWithFilesById(long id);
+
+    Optional<SchematicSummary> findSummaryById(long id);
+
+    Page<SchematicSummary> findSummariesBy(Pageable pageable);
+
+    // Same as findSummariesBy(Pageable) without the count query
+    Slice<SchematicSummary> findSummarySliceBy(Pageable pageable);
 }
@@ -14,6 +14,7 @@ public class SchematicResponse {
     private String name;
     private String description;
     private Long owner;
+    private Long version;
     private List<FileDto> files;
 
     @Getter
@@ -24,7 +25,7 @@ public class SchematicResponse {
     public static class FileDto {
         private String hash;
         private String name;
-        private Integer downloads;
-        private Integer fileSize;
+        private Long downloads;
+        private Long fileSize;
     }
 }
@@ -1,14 +1,35 @@
 package zielonka.chmury.schematics;
 
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
+import zielonka.chmury.ETags;
+import zielonka.chmury.PreconditionFailedException;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.security.MessageDigest;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
 
 @Service
@@ -16,21 +37,77 @@ public class SchematicService {
 
     private final SchematicRepository schematicRepository;
     private final PostFileRepository postFileRepository;
+    private final BlobStore blobStore;
+    private final UploadSessionStore uploadSessions;
+    private final UploadJobs uploadJobs;
+    private final BlobReferences blobReferences;
+    private final DownloadCounter downloadCounter;
+    private final TransferBulkhead transfers;
+    private final TransactionTemplate transactionTemplate;
+    private final EntityManager entityManager;
+    private final Executor blobExecutor;
+    private final int maxFilesPerUpload;
 
     public SchematicService(SchematicRepository schematicRepository,
                             PostFileRepository postFileRepository,
-                            @Value("${schematics.storage-dir:./data/files}") String storageDir) throws IOException {
+                            BlobStore blobStore,
+                            UploadSessionStore uploadSessions,
+                            UploadJobs uploadJobs,
+                            BlobReferences blobReferences,
+                            DownloadCounter downloadCounter,
+                            TransferBulkhead transfers,
+                            PlatformTransactionManager transactionManager,
+                            EntityManager entityManager,
+                            @Qualifier(SchematicsConfiguration.BLOB_EXECUTOR) Executor blobExecutor,
+                            @Value("${schematics.upload.max-files}") int maxFilesPerUpload) {
         this.schematicRepository = schematicRepository;
         this.postFileRepository = postFileRepository;
+        this.blobStore = blobStore;
+        this.uploadSessions = uploadSessions;
+        this.uploadJobs = uploadJobs;
+        this.blobReferences = blobReferences;
+        this.downloadCounter = downloadCounter;
+        this.transfers = transfers;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.entityManager = entityManager;
+        this.blobExecutor = blobExecutor;
+        this.maxFilesPerUpload = maxFilesPerUpload;
     }
 
-    public org.springframework.data.domain.Page<SchematicPostEntity> listAll(org.springframework.data.domain.Pageable pageable) {
-        return schematicRepository.findAll(pageable);
+    // Read paths select straight into projections, so nothing is tracked by the persistence context
+
+    @Transactional(readOnly = true)
+    public Page<SchematicResponse> listAll(Pageable pageable) {
+        Page<SchematicSummary> page = schematicRepository.findSummariesBy(pageable);
+        Map<Long, List<SchematicResponse.FileDto>> files = filesOf(page.getContent());
+        return page.map(s -> s.toResponse(files.getOrDefault(s.id(), List.of())));
+    }
+
+    @Transactional(readOnly = true)
+    public Slice<SchematicResponse> listSlice(Pageable pageable) {
+        Slice<SchematicSummary> slice = schematicRepository.findSummarySliceBy(pageable);
+        Map<Long, List<SchematicResponse.FileDto>> files = filesOf(slice.getContent());
+        return slice.map(s -> s.toResponse(files.getOrDefault(s.id(), List.of())));
     }
 
-    public SchematicPostEntity getById(long id) {
-        return schematicRepository.findById(id).orElseThrow(
+    @Transactional(readOnly = true)
+    public SchematicResponse getById(long id) {
+        SchematicSummary summary = schematicRepository.findSummaryById(id).orElseThrow(
                 () -> new ResourceNotFoundException("Schematic not found: " + id));
+        return summary.toResponse(filesOf(List.of(summary)).getOrDefault(id, List.of()));
+    }
+
+    /**
+     * Loads the files of all given schematics with a single query, grouped by schematic ID.
+     */
+    private Map<Long, List<SchematicResponse.FileDto>> filesOf(Collection<SchematicSummary> schematics) {
+        if (schematics.isEmpty()) {
+            return Map.of();
+        }
+        List<Long> ids = schematics.stream().map(SchematicSummary::id).toList();
+        return postFileRepository.findSummariesBySchematicIds(ids).stream()
+                .collect(Collectors.groupingBy(FileSummary::schematicId,
+                        Collectors.mapping(this::toDto, Collectors.toList())));
     }
 
     @Transactional
@@ -45,9 +122,10 @@ public class SchematicService {
     }
 
     @Transactional
-    public SchematicPostEntity update(long id, UpdateSchematicRequest dto) {
-        SchematicPostEntity entity = schematicRepository.findById(id)
+    public SchematicPostEntity update(long id, UpdateSchematicRequest dto, String ifMatch) {
+        SchematicPostEntity entity = schematicRepository.findWithFilesById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Schematic not found: " + id));
+        ETags.checkIfMatch(ifMatch, entity.getVersion());
 
         if (dto.getName() != null) {
             entity.setName(dto.getName());
@@ -59,56 +137,312 @@ public class SchematicService {
             entity.setOwner(dto.getOwner());
         }
 
-        return schematicRepository.save(entity);
+        // Flushed here so the response carries the new version and a concurrent update fails as 412
+        try {
+            return schematicRepository.saveAndFlush(entity);
+        } catch (OptimisticLockingFailureException ex) {
+            throw new PreconditionFailedException("Schematic was modified concurrently: " + id);
+        }
     }
 
     @Transactional
-    public void delete(long id) {
+    public void delete(long id, String ifMatch) {
         SchematicPostEntity entity = schematicRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Schematic not found: " + id));
+        ETags.checkIfMatch(ifMatch, entity.getVersion());
+        // The file rows go with the schematic through orphan removal
+        blobReferences.decrement(postFileRepository.findHashesBySchematicId(id));
         schematicRepository.delete(entity);
+        try {
+            schematicRepository.flush();
+        } catch (OptimisticLockingFailureException ex) {
+            throw new PreconditionFailedException("Schematic was modified concurrently: " + id);
+        }
     }
 
-    @Transactional
     public CreateFileResponse uploadFile(long schematicId, MultipartFile file) throws IOException {
-        SchematicPostEntity schematic = schematicRepository.findById(schematicId)
-                .orElseThrow(() -> new ResourceNotFoundException("Schematic not found: " + schematicId));
+        return uploadFiles(schematicId, List.of(file)).get(0);
+    }
+
+    /**
+     * Stores all parts in parallel on the blob executor and attaches them to the schematic in one
+     * transaction. Content is stored before the transaction opens, so slow clients never hold a
+     * database connection while their bytes are read. Parts whose content is already attached to
+     * this schematic are not inserted again.
+     *
+     * @return one entry per part, in request order
+     */
+    public List<CreateFileResponse> uploadFiles(long schematicId, List<MultipartFile> files) throws IOException {
+        if (files.isEmpty()) {
+            throw new InvalidUploadException("No files in upload");
+        }
+        if (files.size() > maxFilesPerUpload) {
+            throw new InvalidUploadException("An upload can contain up to " + maxFilesPerUpload + " files");
+        }
+        requireSchematic(schematicId);
+
+        List<BlobStore.StoredBlob> blobs = storeAll(files);
+        transfers.run(() -> blobReferences.register(blobs.stream().map(BlobStore.StoredBlob::hash).toList()));
+
+        Map<String, PostFileEntity> byHash = new LinkedHashMap<>();
+        for (int i = 0; i < files.size(); i++) {
+            BlobStore.StoredBlob blob = blobs.get(i);
+            byHash.computeIfAbsent(blob.hash(), hash -> newFile(blob))
+                    .setName(files.get(i).getOriginalFilename());
+        }
+        attach(schematicId, byHash);
+
+        List<CreateFileResponse> responses = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            BlobStore.StoredBlob blob = blobs.get(i);
+            responses.add(CreateFileResponse.builder()
+                    .hash(blob.hash())
+                    .name(files.get(i).getOriginalFilename())
+                    .fileSize(blob.size())
+                    .build());
+        }
+        return responses;
+    }
+
+    /**
+     * Queues the part for processing on the upload job executor and returns right away. The request
+     * only copies the part to the spool; hashing, storing and the attach transaction run later, so
+     * the request never holds a database connection beyond the existence check.
+     *
+     * @throws UploadQueueFullException if the job queue is full
+     */
+    public UploadJobResponse submitUpload(long schematicId, MultipartFile file) throws IOException {
+        requireSchematic(schematicId);
+        String fileName = file.getOriginalFilename();
+        return toJobStatus(uploadJobs.submit(schematicId, file, spool -> {
+            BlobStore.StoredBlob blob;
+            try (InputStream input = Files.newInputStream(spool)) {
+                blob = blobStore.store(input);
+            }
+            return attachStored(schematicId, blob, fileName);
+        }));
+    }
+
+    public UploadJobResponse getUploadJob(long schematicId, String jobId) {
+        return toJobStatus(uploadJobs.get(schematicId, jobId));
+    }
+
+    private static UploadJobResponse toJobStatus(UploadJob job) {
+        return UploadJobResponse.builder()
+                .jobId(job.id())
+                .fileName(job.fileName())
+                .status(job.status())
+                .file(job.result())
+                .error(job.error())
+                .build();
+    }
+
+    /**
+     * Attaches files the server already has by hash, without transferring their content. A hash
+     * counts as known when the blob is stored and attached to some schematic with the same size.
+     * Hashes are public in file listings, so this exposes nothing a download would not.
+     *
+     * @return the attached files and the hashes the client still has to upload
+     */
+    public PreflightResponse preflight(long schematicId, List<PreflightRequest.Item> items) {
+        requireSchematic(schematicId);
+        Set<String> hashes = items.stream().map(PreflightRequest.Item::getHash).collect(Collectors.toSet());
+        Map<String, Long> known = new HashMap<>();
+        for (Object[] row : transfers.call(() -> postFileRepository.findKnownSizes(hashes))) {
+            known.put((String) row[0], (Long) row[1]);
+        }
+
+        Map<String, PostFileEntity> byHash = new LinkedHashMap<>();
+        List<CreateFileResponse> attached = new ArrayList<>();
+        List<String> missing = new ArrayList<>();
+        for (PreflightRequest.Item item : items) {
+            Long size = known.get(item.getHash());
+            if (size == null || size.longValue() != item.getSize() || !blobStore.exists(item.getHash())) {
+                missing.add(item.getHash());
+                continue;
+            }
+            byHash.computeIfAbsent(item.getHash(), hash -> newFile(new BlobStore.StoredBlob(hash, size, false)))
+                    .setName(item.getName());
+            attached.add(CreateFileResponse.builder()
+                    .hash(item.getHash())
+                    .name(item.getName())
+                    .fileSize(size)
+                    .build());
+        }
+        if (!byHash.isEmpty()) {
+            attach(schematicId, byHash);
+        }
+        return new PreflightResponse(attached, missing);
+    }
+
+    public UploadStatusResponse initiateUpload(long schematicId, InitiateUploadRequest request) throws IOException {
+        requireSchematic(schematicId);
+        return toStatus(uploadSessions.create(schematicId, request.getFileName(), request.getSize()));
+    }
+
+    public UploadStatusResponse getUpload(long schematicId, String uploadId) {
+        return toStatus(uploadSessions.get(schematicId, uploadId));
+    }
 
-        String hash = computeSha256(file.getInputStream());
+    /**
+     * Appends one chunk of a resumable upload, streaming it to disk without buffering it in memory.
+     */
+    public UploadStatusResponse uploadChunk(long schematicId, String uploadId, long offset, InputStream input)
+            throws IOException {
+        UploadSession session = uploadSessions.get(schematicId, uploadId);
+        uploadSessions.append(session, offset, input);
+        return toStatus(session);
+    }
 
-        PostFileEntity postFile = new PostFileEntity();
-        postFile.setHash(hash);
-        postFile.setName(file.getOriginalFilename());
-        postFile.setDownload(0);
-        postFile.setFileSize((int) file.getSize());
-        postFile.setSchematic(schematic);
+    /**
+     * Moves a fully received upload into the blob store and attaches it to the schematic. The hash
+     * was computed while the chunks arrived, so the content is not read again.
+     */
+    public CreateFileResponse completeUpload(long schematicId, String uploadId) throws IOException {
+        UploadSession session = uploadSessions.get(schematicId, uploadId);
+        BlobStore.StoredBlob blob = uploadSessions.complete(session, blobStore::storeHashed);
+        return attachStored(schematicId, blob, session.fileName());
+    }
 
-        schematic.addFile(postFile);
+    public void abortUpload(long schematicId, String uploadId) throws IOException {
+        uploadSessions.abort(uploadSessions.get(schematicId, uploadId));
+    }
 
-        postFileRepository.save(postFile);
-        schematicRepository.save(schematic);
+    private static UploadStatusResponse toStatus(UploadSession session) {
+        return UploadStatusResponse.builder()
+                .uploadId(session.id())
+                .fileName(session.fileName())
+                .size(session.size())
+                .offset(session.offset())
+                .build();
+    }
 
+    private CreateFileResponse attachStored(long schematicId, BlobStore.StoredBlob blob, String fileName) {
+        transfers.run(() -> blobReferences.register(List.of(blob.hash())));
+        PostFileEntity file = newFile(blob);
+        file.setName(fileName);
+        attach(schematicId, Map.of(blob.hash(), file));
         return CreateFileResponse.builder()
-                .hash(hash)
-                .name(postFile.getName())
-                .fileSize(file.getSize())
+                .hash(blob.hash())
+                .name(fileName)
+                .fileSize(blob.size())
                 .build();
     }
 
+    private static PostFileEntity newFile(BlobStore.StoredBlob blob) {
+        PostFileEntity entity = new PostFileEntity();
+        entity.setHash(blob.hash());
+        entity.setDownload(0);
+        entity.setFileSize(blob.size());
+        return entity;
+    }
+
+    /**
+     * Attaches stored blobs to the schematic in one transaction. Files already attached to this
+     * schematic are left as they are.
+     */
+    private void attach(long schematicId, Map<String, PostFileEntity> byHash) {
+        transfers.run(() -> transactionTemplate.executeWithoutResult(status -> {
+            SchematicPostEntity schematic = schematicRepository.findById(schematicId)
+                    .orElseThrow(() -> new ResourceNotFoundException("Schematic not found: " + schematicId));
+
+            Set<String> existing = postFileRepository.findAttachedHashes(schematicId, byHash.keySet());
+            List<String> added = new ArrayList<>();
+            for (PostFileEntity file : byHash.values()) {
+                if (!existing.contains(file.getHash())) {
+                    file.setSchematic(schematic);
+                    entityManager.persist(file);
+                    added.add(file.getHash());
+                }
+            }
+            // Counting locks the blob_refs rows, so a sweep either finished before or skips them now
+            blobReferences.increment(added);
+            for (String hash : added) {
+                if (!blobStore.exists(hash)) {
+                    throw new UploadConflictException("Content " + hash + " was reclaimed while attaching it, upload it again");
+                }
+            }
+            if (!added.isEmpty()) {
+                // The file list is part of the schematic's representation, so it changes its ETag
+                entityManager.lock(schematic, LockModeType.OPTIMISTIC_FORCE_INCREMENT);
+            }
+        }));
+    }
+
+    // Transfer paths reach the database through the bulkhead, so they cannot take the whole pool
+    private void requireSchematic(long schematicId) {
+        if (!transfers.call(() -> schematicRepository.existsById(schematicId))) {
+            throw new ResourceNotFoundException("Schematic not found: " + schematicId);
+        }
+    }
+
+    private List<BlobStore.StoredBlob> storeAll(List<MultipartFile> files) throws IOException {
+        if (files.size() == 1) {
+            return List.of(store(files.get(0)));
+        }
+        List<CompletableFuture<BlobStore.StoredBlob>> pending = files.stream()
+                .map(file -> CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return store(file);
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                }, blobExecutor))
+                .toList();
+        try {
+            return pending.stream().map(CompletableFuture::join).toList();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            throw ex.getCause() instanceof RuntimeException runtime ? runtime : ex;
+        }
+    }
+
+    private BlobStore.StoredBlob store(MultipartFile file) throws IOException {
+        try (InputStream input = file.getInputStream()) {
+            return blobStore.store(input);
+        }
+    }
+
+    public PostFileEntity getFile(long schematicId, String fileHash) {
+        return transfers.call(() -> postFileRepository.findBySchematicIdAndHash(schematicId, fileHash))
+                .orElseThrow(() -> new ResourceNotFoundException("File not found: " + fileHash));
+    }
+
+    public BlobStore.Blob blob(PostFileEntity file) {
+        BlobStore.Blob blob = blobStore.find(file.getHash());
+        if (blob == null) {
+            throw new ResourceNotFoundException("File content not available: " + file.getHash());
+        }
+        return blob;
+    }
+
+    public void recordDownload(PostFileEntity file) {
+        downloadCounter.increment(file.getId());
+    }
+
     @Transactional
     public void deleteFile(long schematicId, String fileHash) {
         SchematicPostEntity schematic = schematicRepository.findById(schematicId)
                 .orElseThrow(() -> new ResourceNotFoundException("Schematic not found: " + schematicId));
 
-        PostFileEntity file = postFileRepository.findById(fileHash)
+        PostFileEntity file = postFileRepository.findBySchematicIdAndHash(schematicId, fileHash)
                 .orElseThrow(() -> new ResourceNotFoundException("File not found: " + fileHash));
 
-        if (file.getSchematic() == null || file.getSchematic().getId() != schematicId) {
-            throw new IllegalArgumentException("File does not belong to this schematic");
-        }
-
         schematic.removeFile(file);
         postFileRepository.delete(file);
+        blobReferences.decrement(List.of(fileHash));
+        entityManager.lock(schematic, LockModeType.OPTIMISTIC_FORCE_INCREMENT);
+    }
+
+    private SchematicResponse.FileDto toDto(FileSummary f) {
+        return SchematicResponse.FileDto.builder()
+                .hash(f.hash())
+                .name(f.name())
+                .downloads(f.download() + downloadCounter.pending(f.id()))
+                .fileSize(f.fileSize())
+                .build();
     }
 
     public List<SchematicResponse.FileDto> filesToDto(List<PostFileEntity> files) {
@@ -116,30 +450,9 @@ public class SchematicService {
                 .map(f -> SchematicResponse.FileDto.builder()
                         .hash(f.getHash())
                         .name(f.getName())
-                        .downloads(f.getDownload())
+                        .downloads(f.getDownload() + downloadCounter.pending(f.getId()))
                         .fileSize(f.getFileSize())
                         .build())
                 .collect(Collectors.toList());
     }
-
-    private String computeSha256(InputStream input) {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] buffer = new byte[8192];
-            int read;
-            while ((read = input.read(buffer)) != -1) {
-                digest.update(buffer, 0, read);
-            }
-            byte[] hashBytes = digest.digest();
-            StringBuilder sb = new StringBuilder(2 * hashBytes.length);
-            for (byte b : hashBytes) {
-                sb.append(String.format("%02x", b & 0xff));
-            }
-            return sb.toString();
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to compute hash", e);
-        } finally {
-            try { input.close(); } catch (Exception ignored) {}
-        }
-    }
 }
\ No newline at end of file
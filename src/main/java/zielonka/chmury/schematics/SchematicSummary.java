@@ -0,0 +1,20 @@
+package zielonka.chmury.schematics;
+
+import java.util.List;
+
+/**
+ * Scalar columns of a schematic, selected without loading the entity or its files.
+ */
+public record SchematicSummary(long id, String name, String description, long owner, long version) {
+
+    SchematicResponse toResponse(List<SchematicResponse.FileDto> files) {
+        return SchematicResponse.builder()
+                .id(id)
+                .name(name)
+                .description(description)
+                .owner(owner)
+                .version(version)
+                .files(files)
+                .build();
+    }
+}
@@ -0,0 +1,60 @@
+package zielonka.chmury.schematics;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadPoolExecutor;
+
+@Configuration
+public class SchematicsConfiguration {
+    public static final String BLOB_EXECUTOR = "blobExecutor";
+    public static final String UPLOAD_JOB_EXECUTOR = "uploadJobExecutor";
+
+    @Value("${schematics.upload.threads}")
+    private int uploadThreads;
+    @Value("${schematics.upload.queue-capacity}")
+    private int uploadQueueCapacity;
+    @Value("${schematics.upload.jobs.threads}")
+    private int jobThreads;
+    @Value("${schematics.upload.jobs.queue-capacity}")
+    private int jobQueueCapacity;
+    @Value("${schematics.upload.jobs.shutdown-timeout}")
+    private Duration jobShutdownTimeout;
+
+    /**
+     * Bounded pool hashing and storing the parts of batch uploads. When it is saturated the request
+     * thread stores the part itself, which throttles clients instead of queueing without limit.
+     * Not a default candidate, so Boot still auto-configures the application task executor.
+     */
+    @Bean(name = BLOB_EXECUTOR, defaultCandidate = false)
+    public ThreadPoolTaskExecutor blobExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("blob-");
+        executor.setCorePoolSize(uploadThreads);
+        executor.setMaxPoolSize(uploadThreads);
+        executor.setQueueCapacity(uploadQueueCapacity);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        return executor;
+    }
+
+    /**
+     * Bounded pool processing asynchronous uploads. Unlike the blob executor it refuses work when
+     * saturated: the request has already returned, so there is no caller to slow down.
+     */
+    @Bean(name = UPLOAD_JOB_EXECUTOR, defaultCandidate = false)
+    public ThreadPoolTaskExecutor uploadJobExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("upload-job-");
+        executor.setCorePoolSize(jobThreads);
+        executor.setMaxPoolSize(jobThreads);
+        executor.setQueueCapacity(jobQueueCapacity);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationMillis(jobShutdownTimeout.toMillis());
+        return executor;
+    }
+}
@@ -0,0 +1,63 @@
+package zielonka.chmury.schematics;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Caps the number of database calls made for file transfers at once. Downloads look up file
+ * metadata and uploads attach files; without a cap, a burst of transfers takes every pooled
+ * connection and catalog reads time out waiting for one. With {@code schematics.transfer.db-permits}
+ * below {@code db.pool.max-size}, the remaining connections stay available to the catalog.
+ * <p>
+ * A transfer that gets no permit within {@code schematics.transfer.db-wait} is refused with
+ * {@code 503}. Calls must not be nested, or a caller could wait on a permit it already holds.
+ */
+@Component
+public class TransferBulkhead {
+
+    private static final long RETRY_AFTER_SECONDS = 1;
+
+    private final Semaphore permits;
+    private final Duration maxWait;
+
+    public TransferBulkhead(@Value("${schematics.transfer.db-permits}") int permits,
+                            @Value("${schematics.transfer.db-wait}") Duration maxWait) {
+        this.permits = new Semaphore(permits, true);
+        this.maxWait = maxWait;
+    }
+
+    /**
+     * @throws TransfersBusyException if no permit became free within the configured wait
+     */
+    public <T> T call(Supplier<T> action) {
+        acquire();
+        try {
+            return action.get();
+        } finally {
+            permits.release();
+        }
+    }
+
+    public void run(Runnable action) {
+        call(() -> {
+            action.run();
+            return null;
+        });
+    }
+
+    private void acquire() {
+        try {
+            if (permits.tryAcquire(maxWait.toMillis(), TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        throw new TransfersBusyException(RETRY_AFTER_SECONDS);
+    }
+}
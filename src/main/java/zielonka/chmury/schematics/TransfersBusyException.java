@@ -0,0 +1,26 @@
+package zielonka.chmury.schematics;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * No transfer permit became free in time, see {@link TransferBulkhead}. Answered with {@code 503}
+ * and a {@code Retry-After} header, like {@link UploadQueueFullException}.
+ */
+public class TransfersBusyException extends ResponseStatusException {
+
+    private final long retryAfterSeconds;
+
+    public TransfersBusyException(long retryAfterSeconds) {
+        super(HttpStatus.SERVICE_UNAVAILABLE, "Too many file transfers in progress, retry later");
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds));
+        return headers;
+    }
+}
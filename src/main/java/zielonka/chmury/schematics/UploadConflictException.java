@@ -0,0 +1,9 @@
+package zielonka.chmury.schematics;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.CONFLICT)
+public class UploadConflictException extends RuntimeException {
+    public UploadConflictException(String msg) { super(msg); }
+}
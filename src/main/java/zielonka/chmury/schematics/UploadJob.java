@@ -0,0 +1,71 @@
+package zielonka.chmury.schematics;
+
+import java.time.Instant;
+
+/**
+ * State of one asynchronous upload. Written by the worker processing it, read by status requests.
+ */
+final class UploadJob {
+
+    private final String id;
+    private final long schematicId;
+    private final String fileName;
+    private volatile UploadJobResponse.Status status = UploadJobResponse.Status.QUEUED;
+    private volatile CreateFileResponse result;
+    private volatile String error;
+    private volatile Instant finishedAt;
+
+    UploadJob(String id, long schematicId, String fileName) {
+        this.id = id;
+        this.schematicId = schematicId;
+        this.fileName = fileName;
+    }
+
+    String id() {
+        return id;
+    }
+
+    long schematicId() {
+        return schematicId;
+    }
+
+    String fileName() {
+        return fileName;
+    }
+
+    UploadJobResponse.Status status() {
+        return status;
+    }
+
+    CreateFileResponse result() {
+        return result;
+    }
+
+    String error() {
+        return error;
+    }
+
+    Instant finishedAt() {
+        return finishedAt;
+    }
+
+    void start() {
+        status = UploadJobResponse.Status.PROCESSING;
+    }
+
+    void succeed(CreateFileResponse result) {
+        this.result = result;
+        finish(UploadJobResponse.Status.SUCCEEDED);
+    }
+
+    void fail(String error) {
+        this.error = error;
+        finish(UploadJobResponse.Status.FAILED);
+    }
+
+    // Status last, so a reader seeing a final status also sees its result
+    private void finish(UploadJobResponse.Status status) {
+        this.finishedAt = Instant.now();
+        this.status = status;
+    }
+}
@@ -0,0 +1,22 @@
+package zielonka.chmury.schematics;
+
+import lombok.*;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class UploadJobResponse {
+    private String jobId;
+    private String fileName;
+    private Status status;
+    // Set once the job has succeeded
+    private CreateFileResponse file;
+    // Set once the job has failed
+    private String error;
+
+    public enum Status {
+        QUEUED, PROCESSING, SUCCEEDED, FAILED
+    }
+}
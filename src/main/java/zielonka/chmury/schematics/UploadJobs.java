@@ -0,0 +1,126 @@
+package zielonka.chmury.schematics;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Asynchronous uploads. The request only spools the part to {@code <storage-dir>/spool} and queues
+ * a job; hashing, storing and attaching run on the bounded upload job executor. When its queue is
+ * full new jobs are refused instead of queued, so the backlog and the spool stay bounded.
+ * <p>
+ * Jobs are kept in memory. Finished jobs can be queried for the retention period; jobs queued when
+ * the application stops are lost, and their spool files are removed on the next start.
+ */
+@Component
+@Slf4j
+public class UploadJobs {
+
+    // Hint for refused clients; a queued job usually finishes within a few seconds
+    private static final long RETRY_AFTER_SECONDS = 5;
+
+    private final Path dir;
+    private final ThreadPoolTaskExecutor executor;
+    private final Duration retention;
+    private final ConcurrentHashMap<String, UploadJob> jobs = new ConcurrentHashMap<>();
+
+    public UploadJobs(@Value("${schematics.storage-dir:./data/files}") String storageDir,
+                      @Qualifier(SchematicsConfiguration.UPLOAD_JOB_EXECUTOR) ThreadPoolTaskExecutor executor,
+                      @Value("${schematics.upload.jobs.retention}") Duration retention) throws IOException {
+        this.dir = Paths.get(storageDir).toAbsolutePath().normalize().resolve("spool");
+        Files.createDirectories(dir);
+        this.executor = executor;
+        this.retention = retention;
+        try (DirectoryStream<Path> stale = Files.newDirectoryStream(dir)) {
+            for (Path file : stale) {
+                log.info("Removing spool file {} left by a previous run", file.getFileName());
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * Spools the part and queues {@code processor} to run on it. The spool file is deleted once the
+     * job has finished, whatever its outcome.
+     *
+     * @throws UploadQueueFullException if no more jobs can be queued
+     */
+    public UploadJob submit(long schematicId, MultipartFile file, Processor processor) throws IOException {
+        // Cheap check first, so a refused request does not copy its part
+        if (executor.getActiveCount() >= executor.getMaxPoolSize()
+                && executor.getThreadPoolExecutor().getQueue().remainingCapacity() == 0) {
+            throw new UploadQueueFullException(RETRY_AFTER_SECONDS);
+        }
+        String id = UUID.randomUUID().toString();
+        Path spool = dir.resolve(id);
+        // Moves the part when the container has already written it to disk
+        file.transferTo(spool.toFile());
+
+        UploadJob job = new UploadJob(id, schematicId, file.getOriginalFilename());
+        jobs.put(id, job);
+        try {
+            executor.execute(() -> run(job, spool, processor));
+        } catch (TaskRejectedException ex) {
+            jobs.remove(id);
+            Files.deleteIfExists(spool);
+            throw new UploadQueueFullException(RETRY_AFTER_SECONDS);
+        }
+        return job;
+    }
+
+    /**
+     * @throws ResourceNotFoundException if there is no such job for this schematic, or it finished
+     *                                   longer than the retention period ago
+     */
+    public UploadJob get(long schematicId, String jobId) {
+        UploadJob job = jobs.get(jobId);
+        if (job == null || job.schematicId() != schematicId) {
+            throw new ResourceNotFoundException("Upload job not found: " + jobId);
+        }
+        return job;
+    }
+
+    @Scheduled(fixedDelayString = "${schematics.upload.jobs.retention}")
+    public void expire() {
+        Instant cutoff = Instant.now().minus(retention);
+        jobs.values().removeIf(job -> job.finishedAt() != null && job.finishedAt().isBefore(cutoff));
+    }
+
+    private void run(UploadJob job, Path spool, Processor processor) {
+        job.start();
+        try {
+            job.succeed(processor.process(spool));
+        } catch (ResourceNotFoundException | InvalidUploadException | UploadConflictException ex) {
+            job.fail(ex.getMessage());
+        } catch (Exception ex) {
+            log.error("Upload job {} failed", job.id(), ex);
+            job.fail("Storing the file failed");
+        } finally {
+            try {
+                Files.deleteIfExists(spool);
+            } catch (IOException ex) {
+                log.warn("Failed to delete spool file {}", spool, ex);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface Processor {
+        CreateFileResponse process(Path data) throws IOException;
+    }
+}
@@ -0,0 +1,26 @@
+package zielonka.chmury.schematics;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * The upload job queue is full. Answered with {@code 503} and a {@code Retry-After} header, which
+ * {@code @ResponseStatus} cannot set.
+ */
+public class UploadQueueFullException extends ResponseStatusException {
+
+    private final long retryAfterSeconds;
+
+    public UploadQueueFullException(long retryAfterSeconds) {
+        super(HttpStatus.SERVICE_UNAVAILABLE, "Upload queue is full, retry later");
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds));
+        return headers;
+    }
+}
@@ -0,0 +1,70 @@
+package zielonka.chmury.schematics;
+
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * State of one resumable upload. The digest covers exactly the first {@link #offset()} bytes of the
+ * data file; both are only changed while holding {@link #lock}.
+ */
+final class UploadSession {
+
+    final ReentrantLock lock = new ReentrantLock();
+
+    private final String id;
+    private final long schematicId;
+    private final String fileName;
+    private final long size;
+    private final Path data;
+    final MessageDigest digest;
+    private volatile long offset;
+    private volatile boolean closed;
+
+    UploadSession(String id, long schematicId, String fileName, long size, Path data,
+                  MessageDigest digest, long offset) {
+        this.id = id;
+        this.schematicId = schematicId;
+        this.fileName = fileName;
+        this.size = size;
+        this.data = data;
+        this.digest = digest;
+        this.offset = offset;
+    }
+
+    String id() {
+        return id;
+    }
+
+    long schematicId() {
+        return schematicId;
+    }
+
+    String fileName() {
+        return fileName;
+    }
+
+    long size() {
+        return size;
+    }
+
+    Path data() {
+        return data;
+    }
+
+    long offset() {
+        return offset;
+    }
+
+    void advance(long bytes) {
+        offset += bytes;
+    }
+
+    boolean closed() {
+        return closed;
+    }
+
+    void close() {
+        closed = true;
+    }
+}
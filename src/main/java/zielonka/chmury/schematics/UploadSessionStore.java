@@ -0,0 +1,321 @@
+package zielonka.chmury.schematics;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Server side of resumable chunked uploads. Each session appends chunks to one file under
+ * {@code <storage-dir>/uploads} and updates its SHA-256 digest as the bytes are written, so
+ * completing an upload neither buffers nor re-reads the content. A properties file next to the data
+ * describes the session; after a restart the digest is rebuilt from the bytes already received.
+ */
+@Component
+@Slf4j
+public class UploadSessionStore {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path dir;
+    private final long maxFileSize;
+    private final Duration sessionTtl;
+    private final ConcurrentHashMap<String, UploadSession> sessions = new ConcurrentHashMap<>();
+
+    public UploadSessionStore(@Value("${schematics.storage-dir:./data/files}") String storageDir,
+                              @Value("${schematics.upload.max-file-size}") DataSize maxFileSize,
+                              @Value("${schematics.upload.session-ttl}") Duration sessionTtl) throws IOException {
+        // Inside the blob store root, so completed uploads can be renamed into place atomically
+        this.dir = Paths.get(storageDir).toAbsolutePath().normalize().resolve("uploads");
+        Files.createDirectories(dir);
+        this.maxFileSize = maxFileSize.toBytes();
+        this.sessionTtl = sessionTtl;
+    }
+
+    public UploadSession create(long schematicId, String fileName, long size) throws IOException {
+        if (size > maxFileSize) {
+            throw new InvalidUploadException("Files are limited to " + maxFileSize + " bytes");
+        }
+        String id = UUID.randomUUID().toString();
+        Path data = dataFile(id);
+        Files.createFile(data);
+
+        Properties meta = new Properties();
+        meta.setProperty("schematicId", Long.toString(schematicId));
+        meta.setProperty("fileName", fileName);
+        meta.setProperty("size", Long.toString(size));
+        try (Writer writer = Files.newBufferedWriter(metaFile(id), StandardCharsets.UTF_8)) {
+            meta.store(writer, null);
+        }
+
+        UploadSession session = new UploadSession(id, schematicId, fileName, size, data, sha256(), 0);
+        sessions.put(id, session);
+        return session;
+    }
+
+    /**
+     * Returns the session, recovering it from disk if it was started before a restart.
+     *
+     * @throws ResourceNotFoundException if there is no such session for this schematic
+     */
+    public UploadSession get(long schematicId, String uploadId) {
+        if (!isUuid(uploadId)) {
+            throw new ResourceNotFoundException("Upload not found: " + uploadId);
+        }
+        UploadSession session = sessions.get(uploadId);
+        if (session == null) {
+            session = recoverOnce(uploadId);
+        }
+        if (session == null || session.closed() || session.schematicId() != schematicId) {
+            throw new ResourceNotFoundException("Upload not found: " + uploadId);
+        }
+        return session;
+    }
+
+    /**
+     * Appends a chunk that must start exactly at the current offset. Bytes are hashed as they are
+     * written; if the client disconnects mid-chunk the bytes received so far are kept and the client
+     * resumes from the new offset.
+     *
+     * @return the offset after the chunk
+     */
+    public long append(UploadSession session, long offset, InputStream input) throws IOException {
+        if (!session.lock.tryLock()) {
+            throw new UploadConflictException("Another chunk of upload " + session.id() + " is in progress");
+        }
+        try {
+            checkOpen(session);
+            if (offset != session.offset()) {
+                throw new UploadConflictException(
+                        "Upload " + session.id() + " is at offset " + session.offset() + ", not " + offset);
+            }
+            try (FileChannel channel = FileChannel.open(session.data(), StandardOpenOption.WRITE)) {
+                // Drops bytes past the offset left by a failed write
+                channel.truncate(offset);
+                channel.position(offset);
+                byte[] buffer = new byte[BUFFER_SIZE];
+                long remaining = session.size() - offset;
+                int n;
+                while ((n = input.read(buffer)) != -1) {
+                    if (n > remaining) {
+                        throw new InvalidUploadException(
+                                "Chunk exceeds the declared size of " + session.size() + " bytes");
+                    }
+                    ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, n);
+                    while (chunk.hasRemaining()) {
+                        channel.write(chunk);
+                    }
+                    session.digest.update(buffer, 0, n);
+                    session.advance(n);
+                    remaining -= n;
+                }
+            }
+            return session.offset();
+        } finally {
+            session.lock.unlock();
+        }
+    }
+
+    /**
+     * Hands the fully received file and its hash to {@code action}, then forgets the session. If
+     * the action fails the session is kept and completion can be retried.
+     */
+    public <T> T complete(UploadSession session, Completion<T> action) throws IOException {
+        if (!session.lock.tryLock()) {
+            throw new UploadConflictException("Another chunk of upload " + session.id() + " is in progress");
+        }
+        try {
+            checkOpen(session);
+            if (session.offset() != session.size()) {
+                throw new InvalidUploadException("Upload " + session.id() + " is incomplete: "
+                        + session.offset() + " of " + session.size() + " bytes received");
+            }
+            try (FileChannel channel = FileChannel.open(session.data(), StandardOpenOption.WRITE)) {
+                channel.truncate(session.size());
+                channel.force(false);
+            }
+            // Digest of a clone, so a failed action leaves the session's digest intact for a retry
+            String hash = HexFormat.of().formatHex(cloneDigest(session).digest());
+            T result = action.apply(session.data(), hash, session.size());
+            forget(session);
+            return result;
+        } finally {
+            session.lock.unlock();
+        }
+    }
+
+    public void abort(UploadSession session) throws IOException {
+        session.lock.lock();
+        try {
+            if (!session.closed()) {
+                forget(session);
+            }
+        } finally {
+            session.lock.unlock();
+        }
+    }
+
+    /**
+     * Removes sessions that have not received a chunk within the session TTL, including ones left
+     * on disk by a previous run.
+     */
+    @Scheduled(fixedDelayString = "${schematics.upload.session-cleanup-interval:1h}")
+    public void expire() {
+        Instant cutoff = Instant.now().minus(sessionTtl);
+        try (DirectoryStream<Path> metas = Files.newDirectoryStream(dir, "*.properties")) {
+            for (Path meta : metas) {
+                String id = meta.getFileName().toString().replace(".properties", "");
+                Path data = dataFile(id);
+                Path activity = Files.exists(data) ? data : meta;
+                if (Files.getLastModifiedTime(activity).toInstant().isAfter(cutoff)) {
+                    continue;
+                }
+                UploadSession session = sessions.get(id);
+                if (session != null && !session.lock.tryLock()) {
+                    continue;
+                }
+                try {
+                    log.debug("Expiring upload {}", id);
+                    sessions.remove(id);
+                    if (session != null) {
+                        session.close();
+                    }
+                    Files.deleteIfExists(data);
+                    Files.deleteIfExists(meta);
+                } finally {
+                    if (session != null) {
+                        session.lock.unlock();
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            log.warn("Failed to expire stale uploads", ex);
+        }
+    }
+
+    /**
+     * Recovers the session outside the map, since re-hashing a large partial file inside
+     * {@code computeIfAbsent} would block other uploads hashed to the same bin. Concurrent requests
+     * for the same upload may both re-hash it; the first one to register its session wins.
+     */
+    private UploadSession recoverOnce(String id) {
+        UploadSession recovered;
+        try {
+            recovered = recover(id);
+        } catch (IOException ex) {
+            log.warn("Failed to recover upload {}", id, ex);
+            return null;
+        }
+        if (recovered == null) {
+            return null;
+        }
+        UploadSession existing = sessions.putIfAbsent(id, recovered);
+        if (existing != null) {
+            return existing;
+        }
+        if (!Files.exists(metaFile(id))) {
+            // Completed, aborted or expired while it was being re-hashed
+            sessions.remove(id, recovered);
+            return null;
+        }
+        return recovered;
+    }
+
+    private UploadSession recover(String id) throws IOException {
+        Path meta = metaFile(id);
+        Path data = dataFile(id);
+        if (!Files.exists(meta) || !Files.exists(data)) {
+            return null;
+        }
+        Properties props = new Properties();
+        try (Reader reader = Files.newBufferedReader(meta, StandardCharsets.UTF_8)) {
+            props.load(reader);
+        }
+        long size = Long.parseLong(props.getProperty("size"));
+        MessageDigest digest = sha256();
+        long offset;
+        try (InputStream in = new DigestInputStream(Files.newInputStream(data), digest)) {
+            offset = in.transferTo(OutputStream.nullOutputStream());
+        }
+        if (offset > size) {
+            throw new IOException("Upload " + id + " has more data than its declared size");
+        }
+        log.info("Recovered upload {} at offset {} of {}", id, offset, size);
+        return new UploadSession(id, Long.parseLong(props.getProperty("schematicId")),
+                props.getProperty("fileName"), size, data, digest, offset);
+    }
+
+    private void forget(UploadSession session) throws IOException {
+        session.close();
+        sessions.remove(session.id());
+        Files.deleteIfExists(session.data());
+        Files.deleteIfExists(metaFile(session.id()));
+    }
+
+    private static void checkOpen(UploadSession session) {
+        if (session.closed()) {
+            throw new ResourceNotFoundException("Upload not found: " + session.id());
+        }
+    }
+
+    private Path dataFile(String id) {
+        return dir.resolve(id + ".part");
+    }
+
+    private Path metaFile(String id) {
+        return dir.resolve(id + ".properties");
+    }
+
+    private static boolean isUuid(String value) {
+        try {
+            return UUID.fromString(value).toString().equals(value);
+        } catch (IllegalArgumentException ex) {
+            return false;
+        }
+    }
+
+    private static MessageDigest cloneDigest(UploadSession session) {
+        try {
+            return (MessageDigest) session.digest.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException("SHA-256 digest cannot be cloned", e);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    @FunctionalInterface
+    public interface Completion<T> {
+        T apply(Path data, String hash, long size) throws IOException;
+    }
+}
@@ -0,0 +1,16 @@
+package zielonka.chmury.schematics;
+
+import lombok.*;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class UploadStatusResponse {
+    private String uploadId;
+    private String fileName;
+    private long size;
+    // Bytes received so far; the next chunk must start here
+    private long offset;
+}
@@ -0,0 +1,39 @@
+package zielonka.chmury;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ContentCodingsTest {
+
+    @Test
+    void acceptsListedCoding() {
+        assertThat(ContentCodings.accepts("br, gzip", "gzip")).isTrue();
+        assertThat(ContentCodings.accepts("GZIP;q=0.5", "gzip")).isTrue();
+    }
+
+    @Test
+    void refusesMissingHeaderAndUnlistedCoding() {
+        assertThat(ContentCodings.accepts(null, "gzip")).isFalse();
+        assertThat(ContentCodings.accepts("br", "gzip")).isFalse();
+    }
+
+    @Test
+    void refusesCodingWithZeroWeight() {
+        assertThat(ContentCodings.accepts("gzip;q=0", "gzip")).isFalse();
+        assertThat(ContentCodings.accepts("gzip; Q = 0.000", "gzip")).isFalse();
+    }
+
+    @Test
+    void wildcardAppliesToUnlistedCodings() {
+        assertThat(ContentCodings.accepts("*", "gzip")).isTrue();
+        assertThat(ContentCodings.accepts("br, *;q=0", "gzip")).isFalse();
+    }
+
+    @Test
+    void explicitEntryOverridesWildcard() {
+        assertThat(ContentCodings.accepts("*, gzip;q=0", "gzip")).isFalse();
+        assertThat(ContentCodings.accepts("gzip;q=0, *", "gzip")).isFalse();
+        assertThat(ContentCodings.accepts("*;q=0, gzip", "gzip")).isTrue();
+    }
+}
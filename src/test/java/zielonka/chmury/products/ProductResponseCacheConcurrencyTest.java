@@ -0,0 +1,223 @@
+package zielonka.chmury.products;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.cache.support.SimpleCacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheManagerProxy;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import zielonka.chmury.CacheConfiguration;
+import zielonka.chmury.products.dto.ProductRequest;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.when;
+
+/**
+ * A read that runs after an update has committed, but before the products cache has been updated,
+ * must not put the old product back into the response cache.
+ */
+@SpringJUnitConfig
+class ProductResponseCacheConcurrencyTest {
+
+    private static final long ID = 1L;
+
+    @MockitoBean
+    ProductRepository productRepository;
+    @MockitoBean
+    ProductNameIndex productNameIndex;
+    @MockitoBean
+    ProductPriceIndex productPriceIndex;
+
+    @Autowired
+    ProductService productService;
+    @Autowired
+    ProductResponseCache productResponseCache;
+    @Autowired
+    ObjectMapper objectMapper;
+    @Autowired
+    GatedCache productsCache;
+
+    @Test
+    void readDuringUpdateDoesNotCacheTheOldProduct() throws Exception {
+        AtomicReference<ProductEntity> row = new AtomicReference<>(product(0, "Wings"));
+        when(productRepository.findById(ID)).thenAnswer(inv -> Optional.of(copy(row.get())));
+        when(productRepository.findResponseById(anyLong())).thenAnswer(inv -> Optional.of(
+                new ProductMapper().toResponse(row.get())));
+        when(productRepository.saveAndFlush(any())).thenAnswer(inv -> {
+            ProductEntity saved = copy(inv.getArgument(0));
+            saved.setVersion(saved.getVersion() + 1);
+            row.set(saved);
+            return copy(saved);
+        });
+        productService.getProductById(ID);
+
+        productsCache.closeGate();
+        CompletableFuture<Void> update = CompletableFuture.runAsync(
+                () -> productService.updateProduct(ID, request("Hot wings"), null));
+        assertThat(productsCache.awaitBlockedPut()).isTrue();
+        // Committed, response cache invalidated, products cache still holds version 0
+        assertThat(version(productResponseCache.product(ID, () -> productService.loadProductById(ID)))).isEqualTo(1);
+        productsCache.openGate();
+        update.get(10, TimeUnit.SECONDS);
+
+        ProductResponseCache.SerializedResponse cached = productResponseCache.product(ID, () -> {
+            throw new AssertionError("expected a cached response");
+        });
+        assertThat(version(cached)).isEqualTo(1);
+        assertThat(new String(cached.json(), StandardCharsets.UTF_8)).contains("Hot wings");
+    }
+
+    private long version(ProductResponseCache.SerializedResponse response) throws Exception {
+        return objectMapper.readTree(response.json()).get("version").asLong();
+    }
+
+    private static ProductEntity product(long version, String name) {
+        LocalDateTime created = LocalDateTime.of(2025, 1, 2, 3, 4, 5);
+        return new ProductEntity(ID, name, "Fried", new BigDecimal("9.99"), ProductCategory.CHICKEN, 5, created, null, version);
+    }
+
+    private static ProductEntity copy(ProductEntity entity) {
+        return new ProductEntity(entity.getId(), entity.getName(), entity.getDescription(), entity.getPrice(),
+                entity.getCategory(), entity.getStockQuantity(), entity.getCreatedAt(), entity.getUpdatedAt(),
+                entity.getVersion());
+    }
+
+    private static ProductRequest request(String name) {
+        ProductRequest request = new ProductRequest();
+        request.setName(name);
+        request.setDescription("Fried");
+        request.setPrice(new BigDecimal("9.99"));
+        request.setCategory(ProductCategory.CHICKEN);
+        request.setStockQuantity(5);
+        return request;
+    }
+
+    /**
+     * Products cache whose next {@code put} blocks until released, holding the updating thread
+     * between its after-commit callbacks.
+     */
+    static class GatedCache extends ConcurrentMapCache {
+
+        private volatile CountDownLatch blocked = new CountDownLatch(0);
+        private volatile CountDownLatch gate = new CountDownLatch(0);
+
+        GatedCache(String name) {
+            super(name);
+        }
+
+        void closeGate() {
+            blocked = new CountDownLatch(1);
+            gate = new CountDownLatch(1);
+        }
+
+        boolean awaitBlockedPut() throws InterruptedException {
+            return blocked.await(10, TimeUnit.SECONDS);
+        }
+
+        void openGate() {
+            gate.countDown();
+        }
+
+        @Override
+        public void put(Object key, Object value) {
+            blocked.countDown();
+            try {
+                gate.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            super.put(key, value);
+        }
+    }
+
+    @Configuration
+    @EnableCaching
+    @EnableTransactionManagement
+    static class Config {
+
+        @Bean
+        GatedCache productsCache() {
+            return new GatedCache(CacheConfiguration.PRODUCTS);
+        }
+
+        @Bean
+        CacheManager cacheManager(GatedCache productsCache) {
+            SimpleCacheManager cacheManager = new SimpleCacheManager();
+            cacheManager.setCaches(List.<Cache>of(productsCache,
+                    new ConcurrentMapCache(CacheConfiguration.PRODUCTS_BY_CATEGORY)));
+            cacheManager.initializeCaches();
+            return new TransactionAwareCacheManagerProxy(cacheManager);
+        }
+
+        @Bean
+        PlatformTransactionManager transactionManager() {
+            return new AbstractPlatformTransactionManager() {
+                @Override
+                protected Object doGetTransaction() {
+                    return new Object();
+                }
+
+                @Override
+                protected void doBegin(Object transaction, TransactionDefinition definition) {
+                }
+
+                @Override
+                protected void doCommit(DefaultTransactionStatus status) {
+                }
+
+                @Override
+                protected void doRollback(DefaultTransactionStatus status) {
+                }
+            };
+        }
+
+        @Bean
+        ObjectMapper objectMapper() {
+            return new ObjectMapper()
+                    .registerModule(new JavaTimeModule())
+                    .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        }
+
+        @Bean
+        ProductResponseCache productResponseCache(ObjectMapper objectMapper) {
+            return new ProductResponseCache(objectMapper, new SimpleMeterRegistry(), 16, Duration.ofMinutes(5), 1024);
+        }
+
+        @Bean
+        ProductService productService(ProductRepository productRepository, CacheManager cacheManager,
+                                      ObjectMapper objectMapper, ProductNameIndex productNameIndex,
+                                      ProductPriceIndex productPriceIndex, ApplicationEventPublisher eventPublisher) {
+            return new ProductService(productRepository, new ProductMapper(), cacheManager, objectMapper,
+                    productNameIndex, productPriceIndex, eventPublisher);
+        }
+    }
+}
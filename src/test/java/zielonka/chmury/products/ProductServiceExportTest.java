@@ -0,0 +1,45 @@
+package zielonka.chmury.products;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.Test;
+import zielonka.chmury.products.dto.ProductResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ProductServiceExportTest {
+
+    private final ProductRepository productRepository = mock(ProductRepository.class);
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    private final ProductService productService = new ProductService(
+            productRepository, null, null, objectMapper, null, null, null);
+
+    @Test
+    void writesOneJsonObjectPerLine() throws Exception {
+        LocalDateTime created = LocalDateTime.of(2025, 1, 2, 3, 4, 5);
+        when(productRepository.streamAllResponses()).thenReturn(Stream.of(
+                new ProductResponse(1L, "Wings", "Hot", new BigDecimal("9.99"), ProductCategory.CHICKEN, 5, created, null, 0L),
+                new ProductResponse(2L, "Basalt", "Cooled", new BigDecimal("1.50"), ProductCategory.LAVA, 0, created, created, 3L)));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long count = productService.exportProducts(out);
+
+        assertThat(count).isEqualTo(2);
+        assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo(
+                "{\"id\":1,\"name\":\"Wings\",\"description\":\"Hot\",\"price\":9.99,\"category\":\"CHICKEN\","
+                        + "\"stockQuantity\":5,\"createdAt\":\"2025-01-02T03:04:05\",\"updatedAt\":null,\"version\":0}\n"
+                        + "{\"id\":2,\"name\":\"Basalt\",\"description\":\"Cooled\",\"price\":1.50,\"category\":\"LAVA\","
+                        + "\"stockQuantity\":0,\"createdAt\":\"2025-01-02T03:04:05\",\"updatedAt\":\"2025-01-02T03:04:05\",\"version\":3}\n");
+    }
+}
@@ -0,0 +1,97 @@
+package zielonka.chmury.schematics;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.http.HttpMessageConvertersAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.DispatcherServletAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.MultipartAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.ServletWebServerFactoryAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.WebMvcAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+/**
+ * Multipart limits are enforced by the servlet container, so this runs the controller on an
+ * embedded server with the application's multipart settings instead of through MockMvc.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class SchematicBatchUploadLimitTest {
+
+    private static final int FILE_SIZE = 3 * 1024 * 1024;
+
+    @SpringBootConfiguration
+    @ImportAutoConfiguration({
+            ServletWebServerFactoryAutoConfiguration.class,
+            DispatcherServletAutoConfiguration.class,
+            WebMvcAutoConfiguration.class,
+            MultipartAutoConfiguration.class,
+            HttpMessageConvertersAutoConfiguration.class,
+            JacksonAutoConfiguration.class
+    })
+    @Import(SchematicController.class)
+    static class Config {
+    }
+
+    @MockitoBean
+    private SchematicService schematicService;
+    @MockitoBean
+    private BlobTransfer blobTransfer;
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Test
+    void acceptsBatchWithFileLargerThanOneMegabyte() throws Exception {
+        when(schematicService.uploadFiles(eq(1L), anyList())).thenAnswer(invocation -> {
+            List<MultipartFile> files = invocation.getArgument(1);
+            return files.stream()
+                    .map(file -> CreateFileResponse.builder()
+                            .name(file.getOriginalFilename())
+                            .fileSize(file.getSize())
+                            .build())
+                    .toList();
+        });
+
+        MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
+        body.add("files", file("large.litematic", FILE_SIZE));
+        body.add("files", file("small.litematic", 10));
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.MULTIPART_FORM_DATA);
+
+        ResponseEntity<CreateFileResponse[]> response = restTemplate.postForEntity(
+                "/api/v1/schematics/1/files/batch", new HttpEntity<>(body, headers), CreateFileResponse[].class);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+        assertThat(response.getBody()).extracting(CreateFileResponse::getFileSize)
+                .containsExactly((long) FILE_SIZE, 10L);
+    }
+
+    private static ByteArrayResource file(String name, int size) {
+        return new ByteArrayResource(new byte[size]) {
+            @Override
+            public String getFilename() {
+                return name;
+            }
+        };
+    }
+}